@@ -0,0 +1,105 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ * 
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.config;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.ubimix.commons.config.ConfigParser.NodeHandler;
+import org.xml.sax.Attributes;
+
+/**
+ * Measures parsing of synthetic configurations with the given number of
+ * registered path masks. Half of the masks are literal paths, the other half
+ * are regular expressions matching elements at any depth.
+ * 
+ * @author kotelnikov
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigParserBenchmark {
+
+    /**
+     * Counts started nodes and passes the counter to the black hole.
+     */
+    private static class CountingHandler extends NodeHandler {
+
+        private Blackhole fBlackhole;
+
+        @Override
+        public void beginNode(
+            String uri,
+            String localName,
+            String name,
+            Attributes attributes) throws Exception {
+            fBlackhole.consume(name);
+        }
+
+    }
+
+    private String fConfig;
+
+    private CountingHandler fHandler = new CountingHandler();
+
+    private ConfigParser fParser;
+
+    @Param({ "10", "100", "1000" })
+    public int masks;
+
+    @Benchmark
+    public void parse(Blackhole blackhole) throws Exception {
+        fHandler.fBlackhole = blackhole;
+        fParser.parse(new StringReader(fConfig));
+    }
+
+    @Setup
+    public void setup() {
+        fParser = new ConfigParser();
+        StringBuilder buf = new StringBuilder();
+        buf.append("<config>");
+        for (int i = 0; i < masks; i++) {
+            if (i % 2 == 0) {
+                fParser.registerHandler("config/section/item" + i, fHandler);
+            } else {
+                fParser.registerHandler(".*/item" + i + "/value", fHandler);
+            }
+            buf.append("<section><item").append(i).append(" id='").append(i);
+            buf.append("'><value>").append(i).append("</value>");
+            buf.append("<other>text</other></item").append(i).append(">");
+            buf.append("</section>");
+        }
+        buf.append("</config>");
+        fConfig = buf.toString();
+    }
+
+}
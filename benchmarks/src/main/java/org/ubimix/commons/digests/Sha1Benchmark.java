@@ -0,0 +1,131 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ * 
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.digests;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ubimix.commons.digests.SHA1.ByteArrayProvider;
+import org.ubimix.commons.digests.SHA1.StringByteProvider;
+
+/**
+ * Compares SHA1 digests calculated by the {@link SHA1} class and by the
+ * standard {@link MessageDigest} for different input sizes and kinds of
+ * inputs. The size is the number of bytes for binary inputs and the number of
+ * characters for strings.
+ * 
+ * @author kotelnikov
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Sha1Benchmark {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private String fAscii;
+
+    private byte[] fBytes;
+
+    private MessageDigest fMessageDigest;
+
+    private String fNonAscii;
+
+    @Param({ "16", "1024", "65536", "1048576", "67108864" })
+    public int size;
+
+    @Benchmark
+    public Object messageDigestAscii() {
+        return fMessageDigest.digest(fAscii.getBytes(UTF8));
+    }
+
+    @Benchmark
+    public Object messageDigestBytes() {
+        return fMessageDigest.digest(fBytes);
+    }
+
+    @Benchmark
+    public Object messageDigestNonAscii() {
+        return fMessageDigest.digest(fNonAscii.getBytes(UTF8));
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        Random random = new Random(size);
+        fBytes = new byte[size];
+        random.nextBytes(fBytes);
+        char[] ascii = new char[size];
+        char[] nonAscii = new char[size];
+        for (int i = 0; i < size; i++) {
+            ascii[i] = (char) (' ' + random.nextInt(95));
+            // Mostly Cyrillic text with some ASCII characters
+            nonAscii[i] = i % 5 == 0 ? ' ' : (char) (0x0430 + random
+                .nextInt(32));
+        }
+        fAscii = new String(ascii);
+        fNonAscii = new String(nonAscii);
+        fMessageDigest = MessageDigest.getInstance("SHA1");
+    }
+
+    @Benchmark
+    public Object sha1Ascii() {
+        return Sha1Hashers.digest(fAscii);
+    }
+
+    @Benchmark
+    public Object sha1Bytes() {
+        return Sha1Hashers.digest(fBytes);
+    }
+
+    @Benchmark
+    public Object sha1BytesProvider() {
+        return Sha1Digest
+            .builder()
+            .update(new ByteArrayProvider(fBytes))
+            .build();
+    }
+
+    @Benchmark
+    public Object sha1NonAscii() {
+        return Sha1Hashers.digest(fNonAscii);
+    }
+
+    @Benchmark
+    public Object sha1StringProvider() {
+        return Sha1Digest
+            .builder()
+            .update(new StringByteProvider(fAscii))
+            .build();
+    }
+
+}
@@ -0,0 +1,107 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures copying and reading of files of different sizes. Files are
+ * written once in the temporary directory, so after the first iterations
+ * they are read from the file system cache.
+ * 
+ * @author kotelnikov
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IOUtilBenchmark {
+
+    /**
+     * This stream ignores all written bytes.
+     */
+    private static class NullOutputStream extends OutputStream {
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+
+        @Override
+        public void write(int b) {
+        }
+
+    }
+
+    private File fFile;
+
+    @Param({ "1024", "1048576", "67108864" })
+    public int size;
+
+    @Benchmark
+    public void copy() throws IOException {
+        IOUtil.copy(new FileInputStream(fFile), new NullOutputStream());
+    }
+
+    @Benchmark
+    public Object copyWithDigest() throws IOException {
+        return IOUtil.copyWithDigest(
+            new FileInputStream(fFile),
+            new NullOutputStream());
+    }
+
+    @Benchmark
+    public String readString() throws IOException {
+        return IOUtil.readString(fFile);
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(size);
+        char[] text = new char[size];
+        for (int i = 0; i < size; i++) {
+            text[i] = i % 64 == 63 ? '\n' : (char) ('a' + random.nextInt(26));
+        }
+        fFile = File.createTempFile("benchmark", ".txt");
+        IOUtil.writeString(fFile, new String(text));
+    }
+
+    @TearDown
+    public void tearDown() {
+        IOUtil.delete(fFile);
+    }
+
+}
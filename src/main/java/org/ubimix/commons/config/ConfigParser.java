@@ -24,8 +24,6 @@ import java.util.Map;
 import java.util.Stack;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
@@ -136,6 +134,16 @@ public class ConfigParser {
          */
         public String fLocalName;
 
+        /**
+         * The matcher used to find the handler of this node
+         */
+        PathMatcher<NodeHandler> fMatcher;
+
+        /**
+         * The node of the mask trie corresponding to the path of this node
+         */
+        PathMatcher.Node<NodeHandler> fMatcherNode;
+
         /**
          *
          */
@@ -189,10 +197,14 @@ public class ConfigParser {
 
     class XmlNodeHandler extends DefaultHandler {
 
-        private Map<Pattern, NodeHandler> fCompiledHandlerMap;
-
         private Stack<NodeHandler> fHandlerStack = new Stack<NodeHandler>();
 
+        /**
+         * The compiled handler masks; it is reset by the
+         * {@link ConfigParser#registerHandler(String, NodeHandler)} method.
+         */
+        private PathMatcher<NodeHandler> fMatcher;
+
         private NodeInfo fRoot;
 
         @Override
@@ -228,18 +240,11 @@ public class ConfigParser {
             fRoot = fRoot.fParent;
         }
 
-        private Map<Pattern, NodeHandler> getCompiledHandlerMap() {
-            if (fCompiledHandlerMap == null) {
-                fCompiledHandlerMap = new LinkedHashMap<Pattern, NodeHandler>();
-                for (Map.Entry<String, NodeHandler> entry : fHandlerMap
-                    .entrySet()) {
-                    String mask = entry.getKey();
-                    Pattern regexp = Pattern.compile(mask);
-                    NodeHandler handler = entry.getValue();
-                    fCompiledHandlerMap.put(regexp, handler);
-                }
+        private PathMatcher<NodeHandler> getMatcher() {
+            if (fMatcher == null) {
+                fMatcher = new PathMatcher<NodeHandler>(fHandlerMap);
             }
-            return fCompiledHandlerMap;
+            return fMatcher;
         }
 
         /**
@@ -253,8 +258,7 @@ public class ConfigParser {
             String qName,
             Attributes attributes) throws SAXException {
             fRoot = new NodeInfo(fRoot, uri, localName, qName, attributes);
-            String path = fRoot.getPath();
-            NodeHandler handler = getNodeHandler(path);
+            NodeHandler handler = getNodeHandler(fRoot);
             if (handler != null) {
                 try {
                     handler.beginNode(
@@ -274,23 +278,30 @@ public class ConfigParser {
         }
 
         /**
-         * @param path
-         * @return
+         * Returns the handler for the given node. A handler registered with a
+         * mask equal to the path of the node has priority; otherwise the
+         * handler of the first registered mask matching the path is used.
+         * The trie node of the mask is found from the node of the parent, so
+         * the exact lookup does not depend on the depth of the path.
+         * 
+         * @param node the node to handle
+         * @return the handler for the node or <code>null</code>
          */
-        private NodeHandler getNodeHandler(String path) {
-            NodeHandler handler = fHandlerMap.get(path);
-            if (handler == null) {
-                Map<Pattern, NodeHandler> map = getCompiledHandlerMap();
-                for (Map.Entry<Pattern, NodeHandler> entry : map.entrySet()) {
-                    Pattern regexp = entry.getKey();
-                    Matcher matcher = regexp.matcher(path);
-                    if (matcher.matches())
-                        handler = entry.getValue();
-                    if (handler != null)
-                        break;
-                }
+        private NodeHandler getNodeHandler(NodeInfo node) {
+            PathMatcher<NodeHandler> matcher = getMatcher();
+            NodeInfo parent = node.fParent;
+            if (parent == null) {
+                node.fMatcherNode = matcher.getRoot().getChild(node.fQName);
+            } else if (parent.fMatcher == matcher) {
+                node.fMatcherNode = parent.fMatcherNode != null
+                    ? parent.fMatcherNode.getChild(node.fQName)
+                    : null;
+            } else {
+                // Handlers were registered after the parent was handled
+                node.fMatcherNode = matcher.getNode(node.getPath());
             }
-            return handler;
+            node.fMatcher = matcher;
+            return matcher.getValue(node.fMatcherNode, node.getPath());
         }
     }
 
@@ -363,6 +374,7 @@ public class ConfigParser {
      */
     public void registerHandler(String pathMask, NodeHandler handler) {
         fHandlerMap.put(pathMask, handler);
+        fXmlHandler.fMatcher = null;
     }
 
 }
\ No newline at end of file
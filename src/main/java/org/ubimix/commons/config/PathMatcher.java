@@ -0,0 +1,303 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ * 
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class finds values registered for path masks. A mask is matched
+ * against a path in two steps, like in the original {@link ConfigParser}
+ * lookup:
+ * <ol>
+ * <li>a mask equal to the path wins; all masks are kept in a trie of path
+ * segments, so the trie node of a path can be found from the node of its
+ * parent path in constant time (see {@link Node#getChild(String)});</li>
+ * <li>otherwise the value of the first registered regular expression fully
+ * matching the path is returned.</li>
+ * </ol>
+ * Masks without regular expression meta-characters can match only equal
+ * paths, so they are not used in the second step. Other masks are combined
+ * in alternations of capturing groups; the alternation is tried from left to
+ * right, so the first registered matching mask wins, and the index of the
+ * first participating group shows which mask it is. Some masks can not be
+ * combined: group numbers and names of back references and named groups
+ * change in an alternation, and quotations (<code>\Q</code>) and comments
+ * enabled by inline flags (<code>(?x)</code>) can extend over the following
+ * masks. Such masks, as well as masks with any other inline flags, are
+ * compiled alone and matched separately in their turn, so the first
+ * registered matching mask still wins.
+ * Masks registered with <code>null</code> values are never returned by the
+ * second step. Results of the second step are cached for each path.
+ * 
+ * @author kotelnikov
+ */
+class PathMatcher<T> {
+
+    /**
+     * A sequence of masks matched by one pattern.
+     */
+    private static class Group<T> {
+
+        /**
+         * Indexes of capturing groups corresponding to each mask
+         */
+        private final int[] fGroups;
+
+        private final Pattern fPattern;
+
+        private final List<T> fValues;
+
+        public Group(List<String> masks, List<T> values) {
+            fValues = values;
+            fGroups = new int[masks.size()];
+            if (masks.size() == 1) {
+                fPattern = Pattern.compile(masks.get(0));
+                fGroups[0] = 0;
+            } else {
+                StringBuilder buf = new StringBuilder();
+                int group = 1;
+                for (int i = 0; i < masks.size(); i++) {
+                    String mask = masks.get(i);
+                    if (i > 0) {
+                        buf.append('|');
+                    }
+                    buf.append('(').append(mask).append(')');
+                    fGroups[i] = group;
+                    group += 1 + getGroupCount(mask);
+                }
+                fPattern = Pattern.compile(buf.toString());
+            }
+        }
+
+        /**
+         * Returns the value of the first mask matching the given path or
+         * <code>null</code> if no mask matches it.
+         */
+        public T match(String path) {
+            Matcher matcher = fPattern.matcher(path);
+            if (!matcher.matches()) {
+                return null;
+            }
+            for (int i = 0; i < fGroups.length; i++) {
+                if (matcher.start(fGroups[i]) >= 0) {
+                    return fValues.get(i);
+                }
+            }
+            return null;
+        }
+
+    }
+
+    /**
+     * A node of the trie of masks.
+     * 
+     * @author kotelnikov
+     */
+    static class Node<T> {
+
+        private Map<String, Node<T>> fChildren;
+
+        private T fValue;
+
+        /**
+         * Returns the node corresponding to the given child segment or
+         * <code>null</code> if there is no masks starting with the path of
+         * this node followed by this segment.
+         * 
+         * @param name the name of the child segment
+         * @return the child node or <code>null</code>
+         */
+        public Node<T> getChild(String name) {
+            return fChildren != null ? fChildren.get(name) : null;
+        }
+
+        /**
+         * @return the value registered for the path of this node or
+         *         <code>null</code>
+         */
+        public T getValue() {
+            return fValue;
+        }
+
+        private Node<T> newChild(String name) {
+            if (fChildren == null) {
+                fChildren = new HashMap<String, Node<T>>();
+            }
+            Node<T> child = fChildren.get(name);
+            if (child == null) {
+                child = new Node<T>();
+                fChildren.put(name, child);
+            }
+            return child;
+        }
+
+    }
+
+    /**
+     * The maximal number of cached paths
+     */
+    private static final int CACHE_SIZE = 10000;
+
+    /**
+     * This pattern finds constructions which can not be used in an
+     * alternation: back references, named groups, quotations and inline
+     * flags. A quotation without the closing <code>\\E</code> and a comment
+     * enabled by <code>(?x)</code> run to the end of the pattern, so they
+     * would swallow the following masks; other flags are kept apart as well
+     * to be safe.
+     */
+    private static final Pattern NOT_COMBINABLE = Pattern
+        .compile("\\\\[1-9]|\\\\k<|\\\\Q|\\(\\?(<[a-zA-Z]|[a-zA-Z-]+[:)])");
+
+    /**
+     * This object is put in the cache for paths without values.
+     */
+    private static final Object NO_VALUE = new Object();
+
+    private static int getGroupCount(String mask) {
+        return Pattern.compile(mask).matcher("").groupCount();
+    }
+
+    private static boolean isLiteral(String mask) {
+        for (int i = 0; i < mask.length(); i++) {
+            if ("\\^$.|?*+()[]{}".indexOf(mask.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final Map<String, Object> fCache = new HashMap<String, Object>();
+
+    private final List<Group<T>> fGroups = new ArrayList<Group<T>>();
+
+    private final Node<T> fRoot = new Node<T>();
+
+    /**
+     * @param masks masks with their values in the order of registration
+     * @throws java.util.regex.PatternSyntaxException if a mask is not a
+     *         valid regular expression
+     */
+    public PathMatcher(Map<String, T> masks) {
+        List<String> run = new ArrayList<String>();
+        List<T> values = new ArrayList<T>();
+        for (Map.Entry<String, T> entry : masks.entrySet()) {
+            String mask = entry.getKey();
+            T value = entry.getValue();
+            Node<T> node = fRoot;
+            for (String segment : mask.split("/", -1)) {
+                node = node.newChild(segment);
+            }
+            node.fValue = value;
+            if (value == null || isLiteral(mask)) {
+                continue;
+            }
+            if (NOT_COMBINABLE.matcher(mask).find()) {
+                flush(run, values);
+                fGroups.add(new Group<T>(
+                    Collections.singletonList(mask),
+                    Collections.singletonList(value)));
+            } else {
+                // Check the syntax of the mask alone
+                Pattern.compile(mask);
+                run.add(mask);
+                values.add(value);
+            }
+        }
+        flush(run, values);
+    }
+
+    private void flush(List<String> run, List<T> values) {
+        if (!run.isEmpty()) {
+            fGroups.add(new Group<T>(
+                new ArrayList<String>(run),
+                new ArrayList<T>(values)));
+            run.clear();
+            values.clear();
+        }
+    }
+
+    /**
+     * Returns the trie node corresponding to the given path.
+     * 
+     * @param path the path
+     * @return the trie node of the path or <code>null</code> if no mask is
+     *         equal to the path or starts with it
+     */
+    public Node<T> getNode(String path) {
+        Node<T> node = fRoot;
+        for (String segment : path.split("/", -1)) {
+            node = node.getChild(segment);
+            if (node == null) {
+                break;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Returns the value for the given path.
+     * 
+     * @param node the trie node of the path or <code>null</code> if there is
+     *        no such node
+     * @param path the path to match
+     * @return the value registered for the first mask matching the path or
+     *         <code>null</code>
+     */
+    public T getValue(Node<T> node, String path) {
+        T value = node != null ? node.fValue : null;
+        if (value == null) {
+            value = match(path);
+        }
+        return value;
+    }
+
+    /**
+     * @return the root node of the trie
+     */
+    public Node<T> getRoot() {
+        return fRoot;
+    }
+
+    /**
+     * Returns the value of the first regular expression matching the given
+     * path.
+     */
+    @SuppressWarnings("unchecked")
+    private T match(String path) {
+        Object value = fCache.get(path);
+        if (value == null) {
+            for (Group<T> group : fGroups) {
+                value = group.match(path);
+                if (value != null) {
+                    break;
+                }
+            }
+            if (fCache.size() < CACHE_SIZE) {
+                fCache.put(path, value != null ? value : NO_VALUE);
+            }
+        }
+        return value != NO_VALUE ? (T) value : null;
+    }
+
+}
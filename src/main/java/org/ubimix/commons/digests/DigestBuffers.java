@@ -0,0 +1,161 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ * 
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.digests;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * This class contains methods feeding {@link ByteBuffer}s to digests and
+ * reading or writing digest values in buffers. These methods are kept out of
+ * the {@link SHA1} and {@link Sha1Digest} classes because NIO buffers are not
+ * available in GWT clients; this class is excluded from the GWT module.
+ * 
+ * @author kotelnikov
+ */
+public class DigestBuffers {
+
+    /**
+     * Reads a digest from the next 20 bytes of the given buffer. The bytes
+     * are read in the network (big-endian) order whatever is the order of the
+     * buffer.
+     * 
+     * @param buf the buffer to read
+     * @return the loaded digest
+     */
+    public static Sha1Digest get(ByteBuffer buf) {
+        boolean bigEndian = buf.order() == ByteOrder.BIG_ENDIAN;
+        int[] words = new int[5];
+        for (int i = 0; i < words.length; i++) {
+            int word = buf.getInt();
+            words[i] = bigEndian ? word : Integer.reverseBytes(word);
+        }
+        return new Sha1Digest(words);
+    }
+
+    /**
+     * Writes the 20 bytes of the given digest in the specified buffer. The
+     * bytes are written in the network (big-endian) order whatever is the
+     * order of the buffer.
+     * 
+     * @param buf the buffer to write
+     * @param digest the digest to write
+     * @return the given buffer
+     */
+    public static ByteBuffer put(ByteBuffer buf, Sha1Digest digest) {
+        boolean bigEndian = buf.order() == ByteOrder.BIG_ENDIAN;
+        for (int i = 0; i < 5; i++) {
+            int word = digest.getWord(i);
+            buf.putInt(bigEndian ? word : Integer.reverseBytes(word));
+        }
+        return buf;
+    }
+
+    /**
+     * Adds all remaining bytes of the given buffer to the specified digest.
+     * After this method call the position of the buffer is equal to its
+     * limit.
+     * 
+     * @param digest the digest to update
+     * @param buf the buffer containing bytes to hash
+     * @return the updated digest
+     */
+    public static SHA1 update(SHA1 digest, ByteBuffer buf) {
+        int pos = buf.position();
+        int limit = buf.limit();
+        if (buf.hasArray()) {
+            digest.update(buf.array(), buf.arrayOffset() + pos, limit - pos);
+        } else {
+            while (pos < limit && !digest.isBlockAligned()) {
+                digest.update(buf.get(pos++));
+            }
+            boolean bigEndian = buf.order() == ByteOrder.BIG_ENDIAN;
+            int[] block = digest.getBlockBuffer();
+            while (limit - pos >= 64) {
+                for (int i = 0; i < 16; i++) {
+                    int word = buf.getInt(pos);
+                    block[i] = bigEndian ? word : Integer.reverseBytes(word);
+                    pos += 4;
+                }
+                digest.updateBlock();
+            }
+            while (pos < limit) {
+                digest.update(buf.get(pos++));
+            }
+        }
+        buf.position(limit);
+        return digest;
+    }
+
+    /**
+     * Adds all remaining bytes of the given buffer to the specified digest
+     * builder. After this method call the position of the buffer is equal to
+     * its limit.
+     * 
+     * @param builder the builder to update
+     * @param buf the buffer containing bytes to hash
+     * @return the updated builder
+     */
+    public static Sha1Digest.Builder update(
+        Sha1Digest.Builder builder,
+        ByteBuffer buf) {
+        update(builder.getSHA1(), buf);
+        return builder;
+    }
+
+    /**
+     * Adds all remaining bytes of the given buffer to the specified hash.
+     * After this method call the position of the buffer is equal to its
+     * limit.
+     * 
+     * @param hash the hash to update
+     * @param buf the buffer containing bytes to hash
+     * @return the updated hash
+     */
+    public static XXHash64 update(XXHash64 hash, ByteBuffer buf) {
+        int pos = buf.position();
+        int limit = buf.limit();
+        if (buf.hasArray()) {
+            hash.update(buf.array(), buf.arrayOffset() + pos, limit - pos);
+        } else {
+            while (pos < limit && !hash.isStripeAligned()) {
+                hash.update(buf.get(pos++));
+            }
+            boolean littleEndian = buf.order() == ByteOrder.LITTLE_ENDIAN;
+            while (limit - pos >= 32) {
+                long w1 = buf.getLong(pos);
+                long w2 = buf.getLong(pos + 8);
+                long w3 = buf.getLong(pos + 16);
+                long w4 = buf.getLong(pos + 24);
+                if (!littleEndian) {
+                    w1 = Long.reverseBytes(w1);
+                    w2 = Long.reverseBytes(w2);
+                    w3 = Long.reverseBytes(w3);
+                    w4 = Long.reverseBytes(w4);
+                }
+                hash.updateStripe(w1, w2, w3, w4);
+                pos += 32;
+            }
+            while (pos < limit) {
+                hash.update(buf.get(pos++));
+            }
+        }
+        buf.position(limit);
+        return hash;
+    }
+
+}
@@ -0,0 +1,331 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ * 
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.digests;
+
+/**
+ * This class contains table-driven methods transforming digests to textual
+ * representations and back. It supports hex (the default representation of
+ * digests), Base64 (RFC 4648, with the standard or the URL-safe alphabet) and
+ * Base32 (RFC 4648) encodings. Encoders write characters directly in
+ * preallocated arrays or string builders; decoders build digests directly
+ * from characters without intermediate strings or arrays. This class can be
+ * used on the server side as well as in GWT clients.
+ * 
+ * @author kotelnikov
+ */
+public class DigestEncoding {
+
+    private static final char[] BASE32_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567"
+        .toCharArray();
+
+    private static final int[] BASE32_VALUES = newValueTable(
+        BASE32_DIGITS,
+        "abcdefghijklmnopqrstuvwxyz",
+        0);
+
+    private static final char[] BASE64_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+        .toCharArray();
+
+    private static final char[] BASE64_URL_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+        .toCharArray();
+
+    /**
+     * Base64 decoding table accepting both the standard and the URL-safe
+     * alphabets.
+     */
+    private static final int[] BASE64_VALUES = newValueTable(
+        BASE64_DIGITS,
+        "-_",
+        62);
+
+    static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final int[] HEX_VALUES = newValueTable(
+        HEX_DIGITS,
+        "ABCDEF",
+        10);
+
+    /**
+     * Appends the hex representation of the given digest (40 characters) to
+     * the specified buffer.
+     * 
+     * @param buf the buffer to update
+     * @param digest the digest to encode
+     * @return the given buffer
+     */
+    public static StringBuilder appendHex(StringBuilder buf, Sha1Digest digest) {
+        for (int i = 0; i < 5; i++) {
+            int word = digest.getWord(i);
+            for (int shift = 28; shift >= 0; shift -= 4) {
+                buf.append(HEX_DIGITS[(word >>> shift) & 0xF]);
+            }
+        }
+        return buf;
+    }
+
+    /**
+     * Decodes a digest from a sequence of characters where each character
+     * holds the given number of bits.
+     */
+    private static Sha1Digest decode(
+        CharSequence str,
+        int start,
+        int end,
+        int[] values,
+        int bitsPerChar) {
+        int[] words = new int[5];
+        int acc = 0;
+        int bits = 0;
+        int pos = 0;
+        for (int i = start; i < end; i++) {
+            char ch = str.charAt(i);
+            int value = ch < values.length ? values[ch] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("Bad character '"
+                    + ch
+                    + "' in the digest: "
+                    + str.subSequence(start, end));
+            }
+            acc = (acc << bitsPerChar) | value;
+            bits += bitsPerChar;
+            if (bits >= 8) {
+                bits -= 8;
+                int b = (acc >>> bits) & 0xFF;
+                words[pos / 4] |= b << (24 - 8 * (pos % 4));
+                pos++;
+            }
+        }
+        return new Sha1Digest(words);
+    }
+
+    /**
+     * Encodes the bytes of the given digest using the specified alphabet
+     * where each character holds the given number of bits.
+     */
+    private static int encode(
+        Sha1Digest digest,
+        char[] digits,
+        int bitsPerChar,
+        char[] dst,
+        int off) {
+        int mask = (1 << bitsPerChar) - 1;
+        int acc = 0;
+        int bits = 0;
+        for (int i = 0; i < 5; i++) {
+            int word = digest.getWord(i);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                acc = (acc << 8) | ((word >>> shift) & 0xFF);
+                bits += 8;
+                while (bits >= bitsPerChar) {
+                    bits -= bitsPerChar;
+                    dst[off++] = digits[(acc >>> bits) & mask];
+                }
+            }
+        }
+        if (bits > 0) {
+            dst[off++] = digits[(acc << (bitsPerChar - bits)) & mask];
+        }
+        return off;
+    }
+
+    /**
+     * Writes the Base32 representation of the given digest (32 characters)
+     * in the specified array.
+     * 
+     * @param digest the digest to encode
+     * @param dst the destination array
+     * @param off the position of the first character to write
+     * @return the position after the last written character
+     */
+    public static int encodeBase32(Sha1Digest digest, char[] dst, int off) {
+        return encode(digest, BASE32_DIGITS, 5, dst, off);
+    }
+
+    /**
+     * Writes the Base64 representation of the given digest (27 characters
+     * followed by one padding symbol) in the specified
+     * array.
+     * 
+     * @param digest the digest to encode
+     * @param urlSafe if this flag is <code>true</code> then the URL-safe
+     *        alphabet is used and the padding symbol is omitted
+     * @param dst the destination array
+     * @param off the position of the first character to write
+     * @return the position after the last written character
+     */
+    public static int encodeBase64(
+        Sha1Digest digest,
+        boolean urlSafe,
+        char[] dst,
+        int off) {
+        if (urlSafe) {
+            off = encode(digest, BASE64_URL_DIGITS, 6, dst, off);
+        } else {
+            off = encode(digest, BASE64_DIGITS, 6, dst, off);
+            dst[off++] = '=';
+        }
+        return off;
+    }
+
+    /**
+     * Writes the hex representation of the given digest (40 characters) in
+     * the specified array.
+     * 
+     * @param digest the digest to encode
+     * @param dst the destination array
+     * @param off the position of the first character to write
+     * @return the position after the last written character
+     */
+    public static int encodeHex(Sha1Digest digest, char[] dst, int off) {
+        if (off < 0 || off > dst.length - 40) {
+            throw new IndexOutOfBoundsException();
+        }
+        for (int i = 0; i < 5; i++) {
+            int word = digest.getWord(i);
+            for (int shift = 28; shift >= 0; shift -= 4) {
+                dst[off++] = HEX_DIGITS[(word >>> shift) & 0xF];
+            }
+        }
+        return off;
+    }
+
+    /**
+     * Creates a decoding table for the given alphabet and additional
+     * characters having values starting from the specified one.
+     */
+    private static int[] newValueTable(
+        char[] digits,
+        String extra,
+        int extraValue) {
+        int[] values = new int[128];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = -1;
+        }
+        for (int i = 0; i < digits.length; i++) {
+            values[digits[i]] = i;
+        }
+        for (int i = 0; i < extra.length(); i++) {
+            values[extra.charAt(i)] = extraValue + i;
+        }
+        return values;
+    }
+
+    /**
+     * Parses the Base32 representation of a digest (32 characters). Lower
+     * case letters are accepted.
+     * 
+     * @param str the string to parse
+     * @return the parsed digest
+     * @throws IllegalArgumentException if the given string is not a valid
+     *         Base32 representation of a digest
+     */
+    public static Sha1Digest parseBase32(CharSequence str) {
+        if (str.length() != 32) {
+            throw new IllegalArgumentException(
+                "Base32 digest should contain 32 characters: " + str);
+        }
+        return decode(str, 0, 32, BASE32_VALUES, 5);
+    }
+
+    /**
+     * Parses the Base64 representation of a digest (27 characters with an
+     * optional padding symbol). Both the standard and the URL-safe alphabets
+     * are accepted.
+     * 
+     * @param str the string to parse
+     * @return the parsed digest
+     * @throws IllegalArgumentException if the given string is not a valid
+     *         Base64 representation of a digest
+     */
+    public static Sha1Digest parseBase64(CharSequence str) {
+        int len = str.length();
+        if (len == 28 && str.charAt(27) == '=') {
+            len--;
+        }
+        if (len != 27) {
+            throw new IllegalArgumentException(
+                "Base64 digest should contain 27 characters: " + str);
+        }
+        return decode(str, 0, len, BASE64_VALUES, 6);
+    }
+
+    /**
+     * Parses the hex representation of a digest (40 characters). Upper case
+     * letters are accepted.
+     * 
+     * @param str the string to parse
+     * @return the parsed digest
+     * @throws IllegalArgumentException if the given string is not a valid
+     *         hex representation of a digest
+     */
+    public static Sha1Digest parseHex(CharSequence str) {
+        return parseHex(str, 0, str.length());
+    }
+
+    /**
+     * Parses the hex representation of a digest (40 characters) in the
+     * specified subsequence of characters.
+     * 
+     * @param str the sequence containing the digest
+     * @param start the index of the first character of the digest
+     * @param end the index after the last character of the digest
+     * @return the parsed digest
+     * @throws IllegalArgumentException if the given string is not a valid
+     *         hex representation of a digest
+     */
+    public static Sha1Digest parseHex(CharSequence str, int start, int end) {
+        if (end - start != 40) {
+            throw new IllegalArgumentException(
+                "Hex digest should contain 40 characters: "
+                    + str.subSequence(start, end));
+        }
+        return decode(str, start, end, HEX_VALUES, 4);
+    }
+
+    /**
+     * @param digest the digest to encode
+     * @return the Base32 representation of the given digest
+     */
+    public static String toBase32(Sha1Digest digest) {
+        char[] array = new char[32];
+        encodeBase32(digest, array, 0);
+        return new String(array);
+    }
+
+    /**
+     * @param digest the digest to encode
+     * @param urlSafe if this flag is <code>true</code> then the URL-safe
+     *        alphabet is used and the padding symbol is omitted
+     * @return the Base64 representation of the given digest
+     */
+    public static String toBase64(Sha1Digest digest, boolean urlSafe) {
+        char[] array = new char[28];
+        int len = encodeBase64(digest, urlSafe, array, 0);
+        return new String(array, 0, len);
+    }
+
+    /**
+     * @param digest the digest to encode
+     * @return the hex representation of the given digest
+     */
+    public static String toHex(Sha1Digest digest) {
+        char[] array = new char[40];
+        encodeHex(digest, array, 0);
+        return new String(array);
+    }
+
+}
@@ -0,0 +1,211 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ * 
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.digests;
+
+/**
+ * This class calculates HMAC-SHA1 message authentication codes (RFC 2104).
+ * The states of the inner and outer digests after the key pads are
+ * calculated once in the constructor, so each message costs only its own
+ * blocks and one finishing block of the outer digest. Instances of this
+ * class can be re-used to authenticate any number of messages with the same
+ * key: the {@link #getMac()} method returns the code and resets the object.
+ * This class also implements the PBKDF2-HMAC-SHA1 key derivation function
+ * (RFC 2898). This class can be used on the server side as well as in GWT
+ * clients.
+ * 
+ * @author kotelnikov
+ */
+public class HmacSHA1 {
+
+    /**
+     * Returns the HMAC-SHA1 code of the given message.
+     * 
+     * @param key the secret key
+     * @param message the message to authenticate
+     * @return the message authentication code
+     */
+    public static Sha1Digest mac(byte[] key, byte[] message) {
+        return new HmacSHA1(key).update(message).getMac();
+    }
+
+    /**
+     * Derives a key from the given password using the PBKDF2-HMAC-SHA1
+     * function. The pad states of the password are calculated once and all
+     * iterations are performed directly on these states without allocating
+     * new objects.
+     * 
+     * @param password the password
+     * @param salt the salt
+     * @param iterations the number of iterations
+     * @param keyLength the length of the derived key in bytes
+     * @return the derived key
+     */
+    public static byte[] pbkdf2(
+        byte[] password,
+        byte[] salt,
+        int iterations,
+        int keyLength) {
+        if (iterations < 1 || keyLength < 0) {
+            throw new IllegalArgumentException();
+        }
+        HmacSHA1 hmac = new HmacSHA1(password);
+        int[] inner = hmac.fInnerState.getState();
+        int[] outer = hmac.fOuterState.getState();
+        int[] w = new int[80];
+        int[] state = new int[5];
+        int[] u = new int[5];
+        int[] t = new int[5];
+        byte[] result = new byte[keyLength];
+        for (int block = 1, pos = 0; pos < keyLength; block++) {
+            hmac.update(salt);
+            hmac.update(block >>> 24);
+            hmac.update(block >>> 16);
+            hmac.update(block >>> 8);
+            hmac.update(block);
+            hmac.finish(u);
+            System.arraycopy(u, 0, t, 0, 5);
+            for (int i = 1; i < iterations; i++) {
+                // U(i) = HMAC(password, U(i - 1)) where the message has 20
+                // bytes and fits in one final block of each digest
+                compressMac(inner, u, w, state);
+                compressMac(outer, state, w, u);
+                for (int j = 0; j < 5; j++) {
+                    t[j] ^= u[j];
+                }
+            }
+            for (int i = 0; i < 20 && pos < keyLength; i++) {
+                result[pos++] = (byte) (t[i / 4] >>> (24 - 8 * (i % 4)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Calculates the digest of a 20-byte message following a 64-byte key pad
+     * block, starting from the given pad state.
+     * 
+     * @param pad the state of the digest after the key pad block
+     * @param message the five words of the message
+     * @param w the message schedule buffer
+     * @param result the five words of the resulting digest
+     */
+    private static void compressMac(
+        int[] pad,
+        int[] message,
+        int[] w,
+        int[] result) {
+        System.arraycopy(message, 0, w, 0, 5);
+        w[5] = 0x80000000;
+        for (int i = 6; i < 15; i++) {
+            w[i] = 0;
+        }
+        w[15] = (64 + 20) * 8;
+        System.arraycopy(pad, 0, result, 0, 5);
+        Sha1Kernel.compress(result, w);
+    }
+
+    private static Sha1State newPadState(byte[] key, int pad) {
+        SHA1 digest = new SHA1();
+        for (int i = 0; i < 64; i++) {
+            int value = i < key.length ? key[i] & 0xFF : 0;
+            digest.update(value ^ pad);
+        }
+        return digest.getState();
+    }
+
+    private final SHA1 fInner;
+
+    private final Sha1State fInnerState;
+
+    private final SHA1 fOuter;
+
+    private final Sha1State fOuterState;
+
+    /**
+     * @param key the secret key; keys longer than 64 bytes are replaced by
+     *        their SHA1 digests
+     */
+    public HmacSHA1(byte[] key) {
+        if (key.length > 64) {
+            key = Sha1Digest.builder().update(key).build().toByteArray();
+        }
+        fInnerState = newPadState(key, 0x36);
+        fOuterState = newPadState(key, 0x5C);
+        fInner = new SHA1(fInnerState);
+        fOuter = new SHA1(fOuterState);
+    }
+
+    /**
+     * Finishes the calculation of the code, writes it in the given array and
+     * resets this object.
+     */
+    private void finish(int[] result) {
+        fInner.finish();
+        int[] inner = fInner.getInternalDigest();
+        fOuter.setState(fOuterState);
+        for (int i = 0; i < 5; i++) {
+            int word = inner[i];
+            fOuter.update(word >>> 24);
+            fOuter.update(word >>> 16);
+            fOuter.update(word >>> 8);
+            fOuter.update(word);
+        }
+        fOuter.finish();
+        System.arraycopy(fOuter.getInternalDigest(), 0, result, 0, 5);
+        reset();
+    }
+
+    /**
+     * Returns the authentication code of all bytes added since the last
+     * reset and resets this object, so it can be re-used for a new message.
+     * 
+     * @return the message authentication code
+     */
+    public Sha1Digest getMac() {
+        int[] result = new int[5];
+        finish(result);
+        return new Sha1Digest(result);
+    }
+
+    /**
+     * Discards all added bytes.
+     */
+    public void reset() {
+        fInner.setState(fInnerState);
+    }
+
+    public HmacSHA1 update(byte[] array) {
+        fInner.update(array);
+        return this;
+    }
+
+    public HmacSHA1 update(byte[] array, int offset, int len) {
+        fInner.update(array, offset, len);
+        return this;
+    }
+
+    public HmacSHA1 update(CharSequence msg) {
+        fInner.update(msg);
+        return this;
+    }
+
+    public HmacSHA1 update(int value) {
+        fInner.update(value);
+        return this;
+    }
+
+}
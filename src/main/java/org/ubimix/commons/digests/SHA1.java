@@ -32,22 +32,47 @@ public class SHA1 {
 
     /**
      * This is a byte provider translating a given string to the corresponding
-     * sequence of bytes. This class represents the string using UTF-8 encoding.
-     * So each character of the string will be translated from one to three
-     * bytes depending on character.
+     * sequence of bytes. This class represents the string using UTF-8 encoding
+     * exactly like the {@link SHA1#update(CharSequence)} method: each
+     * character is translated to one, two or three bytes, surrogate pairs are
+     * translated to four bytes and unpaired surrogates are replaced by the '?'
+     * symbol. Note that earlier versions of this class encoded each surrogate
+     * character separately (as three bytes), so digests of strings containing
+     * characters outside of the Basic Multilingual Plane calculated with
+     * providers are different from the digests calculated by these versions.
      * 
      * @author kotelnikov
      */
-    public static abstract class AbstractStringByteProvider  implements IByteProvider {
+    public static abstract class AbstractStringByteProvider
+        implements
+        IByteProvider {
 
-        private int[] fBuf = { 0, 0, 0 };
+        /**
+         * This value of the {@link #fNext} field means that there is no
+         * character read in advance.
+         */
+        private static final int NONE = -2;
+
+        private final int[] fBuf = { 0, 0, 0, 0 };
 
         private int fBufLen = 0;
 
         private int fBufPos = 0;
 
+        private final Utf8Encoder fEncoder = new Utf8Encoder() {
+            @Override
+            protected void updateByte(int value) {
+                fBuf[fBufLen++] = value;
+            }
+        };
 
-        public AbstractStringByteProvider () {
+        /**
+         * The character read after a high surrogate which does not belong to
+         * a surrogate pair
+         */
+        private int fNext = NONE;
+
+        public AbstractStringByteProvider() {
         }
 
         /**
@@ -55,26 +80,17 @@ public class SHA1 {
          */
         public int getNext() {
             if (fBufPos == fBufLen) {
-                int c = readNext();
+                int c = fNext != NONE ? fNext : readNext();
+                fNext = NONE;
                 if (c < 0) {
                     return -1;
                 }
+                boolean high = c >= 0xD800 && c <= 0xDBFF;
+                int next = high ? readNext() : -1;
                 fBufPos = 0;
-                if (c < 128) {
-                    fBufLen = 1;
-                    fBuf[0] = c;
-                    fBuf[1] = 0;
-                    fBuf[2] = 0;
-                } else if ((c > 127) && (c < 2048)) {
-                    fBufLen = 2;
-                    fBuf[0] = (c >>> 6) | 192;
-                    fBuf[1] = (c & 63) | 128;
-                    fBuf[2] = 0;
-                } else {
-                    fBufLen = 3;
-                    fBuf[0] = (c >>> 12) | 224;
-                    fBuf[1] = ((c >>> 6) & 63) | 128;
-                    fBuf[2] = (c & 63) | 128;
+                fBufLen = 0;
+                if (!fEncoder.encode(c, next) && high) {
+                    fNext = next;
                 }
             }
             int result = fBuf[fBufPos++] & 0xFF;
@@ -91,7 +107,84 @@ public class SHA1 {
         protected abstract int readNext();
 
     }
-    
+
+    /**
+     * This is a byte provider giving access to bytes of a given array. It can
+     * be used as a block provider as well as a simple byte-by-byte provider.
+     * 
+     * @author kotelnikov
+     */
+    public static class ByteArrayProvider implements IBlockByteProvider {
+
+        private byte[] fArray;
+
+        private int fEnd;
+
+        private int fPos;
+
+        public ByteArrayProvider(byte[] array) {
+            this(array, 0, array.length);
+        }
+
+        public ByteArrayProvider(byte[] array, int offset, int len) {
+            if (offset < 0 || len < 0 || offset > array.length - len) {
+                throw new IndexOutOfBoundsException();
+            }
+            fArray = array;
+            fPos = offset;
+            fEnd = offset + len;
+        }
+
+        /**
+         * @see org.ubimix.commons.digests.SHA1.IByteProvider#getNext()
+         */
+        public int getNext() {
+            if (fPos >= fEnd) {
+                return -1;
+            }
+            return fArray[fPos++] & 0xFF;
+        }
+
+        /**
+         * @see org.ubimix.commons.digests.SHA1.IBlockByteProvider#read(byte[],
+         *      int, int)
+         */
+        public int read(byte[] dst, int off, int len) {
+            if (fPos >= fEnd) {
+                return -1;
+            }
+            len = Math.min(len, fEnd - fPos);
+            System.arraycopy(fArray, fPos, dst, off, len);
+            fPos += len;
+            return len;
+        }
+
+    }
+
+    /**
+     * Byte providers implementing this interface give access to data by
+     * chunks. The {@link SHA1#update(IByteProvider)} method uses chunks
+     * instead of byte-by-byte calls of the {@link #getNext()} method when a
+     * provider implements this interface.
+     * 
+     * @author kotelnikov
+     */
+    public interface IBlockByteProvider extends IByteProvider {
+
+        /**
+         * Reads up to <code>len</code> bytes in the given array and returns
+         * the number of copied bytes; this method returns -1 if there is no
+         * more available bytes. This method should not return 0 if the
+         * requested length is not 0.
+         * 
+         * @param dst the destination array
+         * @param off the position in the array where the first byte should be
+         *        written
+         * @param len the maximal number of bytes to read
+         * @return the number of copied bytes or -1 if there is nothing to read
+         */
+        int read(byte[] dst, int off, int len);
+    }
 
     /**
      * Instances of this class are used to get bytes for which the hash should
@@ -113,9 +206,8 @@ public class SHA1 {
 
     /**
      * This is a byte provider translating a given string to the corresponding
-     * sequence of bytes. This class represents the string using UTF-8 encoding.
-     * So each character of the string will be translated from one to three
-     * bytes depending on character.
+     * sequence of bytes. This class represents the string using UTF-8 encoding
+     * (see {@link AbstractStringByteProvider}).
      * 
      * @author kotelnikov
      */
@@ -140,6 +232,12 @@ public class SHA1 {
 
     }
 
+    /**
+     * The size of the buffer used to read data from
+     * {@link IBlockByteProvider}s.
+     */
+    private static final int CHUNK_SIZE = 64 * 64;
+
     protected static int addToArray(int[] array, int pos, int val) {
         int i = 32;
         array[pos++] = (val >>> (i -= 8)) & 0xFF;
@@ -150,11 +248,8 @@ public class SHA1 {
     }
 
     protected static void appendByteToBuf(StringBuilder buf, int val) {
-        String str = Integer.toHexString(val & 0xFF);
-        if (str.length() < 2) {
-            buf.append('0');
-        }
-        buf.append(str);
+        buf.append(DigestEncoding.HEX_DIGITS[(val >>> 4) & 0xF]);
+        buf.append(DigestEncoding.HEX_DIGITS[val & 0xF]);
     }
 
     public static void appendIntToBuf(StringBuilder buf, int val) {
@@ -177,7 +272,7 @@ public class SHA1 {
     }
 
     public static String getDigestAsString(int[] digest) {
-        StringBuilder buf = new StringBuilder();
+        StringBuilder buf = new StringBuilder(40);
         appendIntToBuf(buf, digest[0]);
         appendIntToBuf(buf, digest[1]);
         appendIntToBuf(buf, digest[2]);
@@ -186,29 +281,38 @@ public class SHA1 {
         return buf.toString();
     }
 
-    private static int rotateLeft(int n, int s) {
-        return (n << s) | (n >>> (32 - s));
-    }
-
     public static String toHex(int[] array) {
-        StringBuilder buf = new StringBuilder();
+        StringBuilder buf = new StringBuilder(array.length * 2);
         for (int i = 0; i < array.length; i++) {
-            String str = Integer.toHexString(array[i] & 0xFF);
-            if (str.length() < 2) {
-                buf.append('0');
-            }
-            buf.append(str);
+            appendByteToBuf(buf, array[i]);
         }
         return buf.toString();
     }
 
-    private int[] fBuf;
+    private final int[] fBuf = new int[80];
 
+    /**
+     * The position of the next word in the current block (from 0 to 15).
+     * This position is not derived from the 64-bit length because padding
+     * words added by {@link #finish()} are not counted in the length.
+     */
     private int fBufPos;
 
-    private int[] fDigest;
+    /**
+     * This buffer is lazily created and re-used to load data from
+     * {@link IBlockByteProvider}s.
+     */
+    private byte[] fChunk;
+
+    private final int[] fDigest = new int[5];
 
-    private int fLength;
+    /**
+     * This encoder is lazily created and used to add characters to this
+     * digest.
+     */
+    private Utf8Encoder fEncoder;
+
+    private long fLength;
 
     private int fValue;
 
@@ -221,17 +325,24 @@ public class SHA1 {
     }
 
     public SHA1(SHA1 digest) {
-        this();
-        System.arraycopy(digest.fBuf, 0, fBuf, 0, fBuf.length);
-        fBufPos = digest.fBufPos;
-        System.arraycopy(digest.fDigest, 0, fDigest, 0, fDigest.length);
-        fLength = digest.fLength;
-        fValue = digest.fValue;
+        copyFrom(digest);
+    }
+
+    /**
+     * Creates a new digest restored from the given snapshot.
+     * 
+     * @param state the snapshot of a digest state
+     * @see #getState()
+     */
+    public SHA1(Sha1State state) {
+        setState(state);
     }
 
     /**
      * This method adds two values using 16-bit operations. This is a workaround
-     * for bugs in some java script interpreters.
+     * for bugs in some java script interpreters. The digest calculation itself
+     * is performed by the {@link Sha1Kernel} class which has a dedicated GWT
+     * version using the same workaround.
      */
     protected int add(int x, int y) {
         int l = (x & 0xFFFF) + (y & 0xFFFF);
@@ -244,59 +355,31 @@ public class SHA1 {
      * @param val
      */
     private void addToBuf(int val) {
-        fBuf[fBufPos % 16] = val;
-        fBufPos++;
-        if (fBufPos % 16 == 0) {
-            for (int i = 16; i <= 79; i++) {
-                fBuf[i] = rotateLeft(fBuf[i - 3]
-                    ^ fBuf[i - 8]
-                    ^ fBuf[i - 14]
-                    ^ fBuf[i - 16], 1);
-            }
-            int a = fDigest[0];
-            int b = fDigest[1];
-            int c = fDigest[2];
-            int d = fDigest[3];
-            int e = fDigest[4];
-            for (int i = 0; i < 80; i++) {
-                int f = fBuf[i];
-                int temp = 0;
-                switch (i / 20) {
-                    case 0:
-                        temp = add(
-                            add(((b & c) | (~b & d)), add(e, f)),
-                            0x5A827999);
-                        break;
-                    case 1:
-                        temp = add(add((b ^ c ^ d), add(e, f)), 0x6ED9EBA1);
-                        break;
-                    case 2:
-                        temp = add(
-                            add(((b & c) | (b & d) | (c & d)), add(e, f)),
-                            0x8F1BBCDC);
-                        break;
-                    case 3:
-                        temp = add(add((b ^ c ^ d), add(e, f)), 0xCA62C1D6);
-                        break;
-                }
-                temp = add(rotateLeft(a, 5), temp);
-                e = d;
-                d = c;
-                c = rotateLeft(b, 30);
-                b = a;
-                a = temp;
-            }
-            fDigest[0] = add(fDigest[0], a);
-            fDigest[1] = add(fDigest[1], b);
-            fDigest[2] = add(fDigest[2], c);
-            fDigest[3] = add(fDigest[3], d);
-            fDigest[4] = add(fDigest[4], e);
+        fBuf[fBufPos++] = val;
+        if (fBufPos == 16) {
+            fBufPos = 0;
+            processBlock();
         }
     }
 
+    /**
+     * Copies the state of the given digest in this object. Only the chaining
+     * words and the current incomplete block are copied, the rest of the
+     * message schedule buffer is not used between blocks.
+     * 
+     * @param digest the digest to copy
+     */
+    void copyFrom(SHA1 digest) {
+        System.arraycopy(digest.fDigest, 0, fDigest, 0, fDigest.length);
+        System.arraycopy(digest.fBuf, 0, fBuf, 0, 16);
+        fBufPos = digest.fBufPos;
+        fLength = digest.fLength;
+        fValue = digest.fValue;
+    }
+
     private void doUpdate(int value) {
         fLength++;
-        int shift = fLength % 4;
+        int shift = (int) (fLength & 3);
         fValue |= value << (32 - 8 * shift);
         if (shift == 0) {
             addToBuf(fValue);
@@ -308,14 +391,26 @@ public class SHA1 {
      * 
      */
     protected void finish() {
-        int shift = fLength % 4;
+        int shift = (int) (fLength & 3);
         fValue |= (0x080000000 >>> (shift * 8));
         addToBuf(fValue);
-        while (fBufPos % 16 != 14) {
+        while (fBufPos != 14) {
             addToBuf(0);
         }
-        addToBuf(fLength >>> 29);
-        addToBuf((fLength << 3));
+        addToBuf((int) (fLength >>> 29));
+        addToBuf((int) (fLength << 3));
+        Sha1Kernel.onFinish(fLength);
+    }
+
+    /**
+     * Returns the internal message schedule buffer. The first 16 cells of
+     * this array can be filled directly by bulk update methods when this
+     * digest is aligned on a block boundary (see {@link #isBlockAligned()}).
+     * 
+     * @return the internal message schedule buffer
+     */
+    int[] getBlockBuffer() {
+        return fBuf;
     }
 
     /**
@@ -335,29 +430,135 @@ public class SHA1 {
         return result;
     }
 
+    private Utf8Encoder getEncoder() {
+        if (fEncoder == null) {
+            fEncoder = new Utf8Encoder() {
+                @Override
+                protected boolean isWordAligned() {
+                    return (fLength & 3) == 0;
+                }
+
+                @Override
+                protected void updateByte(int value) {
+                    doUpdate(value);
+                }
+
+                @Override
+                protected void updateWord(int word) {
+                    fLength += 4;
+                    addToBuf(word);
+                }
+            };
+        }
+        return fEncoder;
+    }
+
     protected int[] getInternalDigest() {
         return fDigest;
     }
 
-    private void reset() {
-        fDigest = new int[5];
+    /**
+     * Returns the number of bytes added to this digest since the last reset.
+     * 
+     * @return the number of hashed bytes
+     */
+    public long getLength() {
+        return fLength;
+    }
+
+    /**
+     * Returns a snapshot of the current state of this digest. This snapshot
+     * contains only the chaining words, the current incomplete block and the
+     * number of hashed bytes.
+     * 
+     * @return a snapshot of the current state of this digest
+     * @see #setState(Sha1State)
+     */
+    public Sha1State getState() {
+        int len = (int) (fLength & 63);
+        int count = len / 4;
+        int[] block = new int[(len + 3) / 4];
+        System.arraycopy(fBuf, 0, block, 0, count);
+        if (count < block.length) {
+            block[count] = fValue;
+        }
+        return new Sha1State(fDigest.clone(), block, fLength);
+    }
+
+    /**
+     * Returns <code>true</code> if the next byte to hash starts a new 64-byte
+     * block. In this case the whole block can be written directly to the
+     * buffer returned by the {@link #getBlockBuffer()} method and processed
+     * by the {@link #updateBlock()} method.
+     * 
+     * @return <code>true</code> if the digest is aligned on a block boundary
+     */
+    boolean isBlockAligned() {
+        return (fLength & 63) == 0;
+    }
+
+    /**
+     * Processes the first 16 words of the buffer as the next 64-byte block of
+     * the hashed message.
+     */
+    private void processBlock() {
+        Sha1Kernel.compress(fDigest, fBuf);
+    }
+
+    /**
+     * Resets this digest to its initial state. All previously added bytes
+     * are discarded. This method re-uses internal buffers, so it does not
+     * allocate any memory.
+     */
+    public void reset() {
         fDigest[0] = 0x67452301;
         fDigest[1] = 0xEFCDAB89;
         fDigest[2] = 0x98BADCFE;
         fDigest[3] = 0x10325476;
         fDigest[4] = 0xC3D2E1F0;
-        fBuf = new int[80];
         fBufPos = 0;
         fLength = 0;
         fValue = 0;
     }
 
+    /**
+     * Restores the state of this digest from the given snapshot. All
+     * previously added bytes are discarded.
+     * 
+     * @param state the snapshot to restore
+     * @see #getState()
+     */
+    public void setState(Sha1State state) {
+        System.arraycopy(state.getState(), 0, fDigest, 0, fDigest.length);
+        int[] block = state.getBlock();
+        fLength = state.getLength();
+        int len = (int) (fLength & 63);
+        int count = len / 4;
+        System.arraycopy(block, 0, fBuf, 0, count);
+        fBufPos = count;
+        fValue = count < block.length ? block[count] : 0;
+    }
+
     @Override
     public String toString() {
         return getDigestAsString(fDigest);
     }
 
     public SHA1 update(IByteProvider iterator) {
+        if (iterator instanceof IBlockByteProvider) {
+            IBlockByteProvider provider = (IBlockByteProvider) iterator;
+            if (fChunk == null) {
+                fChunk = new byte[CHUNK_SIZE];
+            }
+            while (true) {
+                int len = provider.read(fChunk, 0, fChunk.length);
+                if (len < 0) {
+                    break;
+                }
+                update(fChunk, 0, len);
+            }
+            return this;
+        }
         while (true) {
             int x = iterator.getNext();
             if (x < 0) {
@@ -368,15 +569,111 @@ public class SHA1 {
         return this;
     }
 
+    /**
+     * Adds all bytes of the given array to this digest.
+     * 
+     * @param array the bytes to hash
+     * @return this object
+     */
+    public SHA1 update(byte[] array) {
+        return update(array, 0, array.length);
+    }
+
+    /**
+     * Adds the specified region of the given array to this digest. Whole
+     * 64-byte blocks are packed directly in the message schedule; only
+     * leading and trailing bytes not aligned on a block boundary are added
+     * one by one.
+     * 
+     * @param array the array containing bytes to hash
+     * @param offset the position of the first byte to hash
+     * @param len the number of bytes to hash
+     * @return this object
+     */
+    public SHA1 update(byte[] array, int offset, int len) {
+        if (offset < 0 || len < 0 || offset > array.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        int end = offset + len;
+        while (offset < end && !isBlockAligned()) {
+            doUpdate(array[offset++] & 0xFF);
+        }
+        while (end - offset >= 64) {
+            for (int i = 0; i < 16; i++) {
+                fBuf[i] = (array[offset] << 24)
+                    | ((array[offset + 1] & 0xFF) << 16)
+                    | ((array[offset + 2] & 0xFF) << 8)
+                    | (array[offset + 3] & 0xFF);
+                offset += 4;
+            }
+            updateBlock();
+        }
+        while (offset < end) {
+            doUpdate(array[offset++] & 0xFF);
+        }
+        return this;
+    }
+
     public SHA1 update(int value) {
         value = value & 0xFF;
         doUpdate(value);
         return this;
     }
 
-    public SHA1 update(String msg) {
-        update(new StringByteProvider(msg));
+    /**
+     * Adds the UTF-8 representation of the specified characters to this
+     * digest. Unpaired surrogate characters are replaced by the '?' symbol.
+     * 
+     * @param array the array containing characters to hash
+     * @param offset the position of the first character to hash
+     * @param len the number of characters to hash
+     * @return this object
+     */
+    public SHA1 update(char[] array, int offset, int len) {
+        getEncoder().encode(array, offset, len);
+        return this;
+    }
+
+    /**
+     * Adds the UTF-8 representation of the given character sequence to this
+     * digest. Unpaired surrogate characters are replaced by the '?' symbol.
+     * 
+     * @param msg the characters to hash
+     * @return this object
+     */
+    public SHA1 update(CharSequence msg) {
+        return update(msg, 0, msg.length());
+    }
+
+    /**
+     * Adds the UTF-8 representation of the specified subsequence of
+     * characters to this digest. Runs of ASCII characters are packed four at
+     * a time in message words; all other characters are encoded one by one.
+     * Unpaired surrogate characters are replaced by the '?' symbol.
+     * 
+     * @param msg the sequence containing characters to hash
+     * @param start the index of the first character to hash
+     * @param end the index after the last character to hash
+     * @return this object
+     */
+    public SHA1 update(CharSequence msg, int start, int end) {
+        getEncoder().encode(msg, start, end);
         return this;
     }
 
+    public SHA1 update(String msg) {
+        return update(msg, 0, msg.length());
+    }
+
+    /**
+     * Processes the first 16 words of the internal buffer (see
+     * {@link #getBlockBuffer()}) as the next 64-byte block of the message.
+     * This method should be called only when the digest is aligned on a block
+     * boundary (see {@link #isBlockAligned()}).
+     */
+    void updateBlock() {
+        fLength += 64;
+        processBlock();
+    }
+
 }
@@ -0,0 +1,354 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ * 
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.digests;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class calculates digests of many independent messages in parallel.
+ * Messages can be strings (any {@link CharSequence}), byte arrays,
+ * {@link ByteBuffer}s, {@link File}s or {@link Path}s. The work is spread
+ * between a number of workers running in an executor; each worker uses its
+ * own {@link SHA1} instance for all messages it hashes. Results are returned
+ * in the order of inputs or reported to a {@link IDigestListener} in the
+ * order of inputs or as soon as they are calculated. This class is not
+ * available in GWT clients.
+ * 
+ * <pre>
+ * Sha1Batch batch = Sha1Batch.builder().parallelism(4).build();
+ * List&lt;Sha1Digest&gt; digests = batch.digest(records);
+ * </pre>
+ * 
+ * @author kotelnikov
+ */
+public class Sha1Batch {
+
+    public static class Builder {
+
+        private Executor fExecutor;
+
+        private boolean fOrdered = true;
+
+        private int fParallelism = Runtime.getRuntime().availableProcessors();
+
+        public Sha1Batch build() {
+            Executor executor = fExecutor;
+            if (executor == null) {
+                executor = getDefaultExecutor();
+            }
+            return new Sha1Batch(executor, fParallelism, fOrdered);
+        }
+
+        /**
+         * Sets the executor running workers. By default a shared
+         * {@link ForkJoinPool} is used.
+         */
+        public Builder executor(Executor executor) {
+            fExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Defines if listeners are notified in the order of inputs (the
+         * default) or as soon as each digest is calculated.
+         */
+        public Builder ordered(boolean ordered) {
+            fOrdered = ordered;
+            return this;
+        }
+
+        /**
+         * Sets the maximal number of workers hashing messages at the same
+         * time. By default it is the number of available processors.
+         */
+        public Builder parallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException(
+                    "Parallelism should be positive: " + parallelism);
+            }
+            fParallelism = parallelism;
+            return this;
+        }
+
+    }
+
+    /**
+     * Listeners of this type are notified about calculated digests. If the
+     * batch is not ordered then listeners are called from multiple threads
+     * at the same time.
+     * 
+     * @author kotelnikov
+     */
+    public interface IDigestListener {
+
+        /**
+         * This method is called when the digest of a message is calculated.
+         * 
+         * @param index the index of the message in the list of inputs
+         * @param input the hashed message
+         * @param digest the digest of the message
+         */
+        void onDigest(int index, Object input, Sha1Digest digest);
+    }
+
+    /**
+     * Inputs of this type add their content to digests themselves. This
+     * interface is used by other parallel digest computations of this
+     * package to run their work in batches.
+     * 
+     * @author kotelnikov
+     */
+    interface IInput {
+
+        /**
+         * Adds the content of this input to the given digest.
+         * 
+         * @param digest the digest to update
+         * @throws IOException if the content can not be read
+         */
+        void update(SHA1 digest) throws IOException;
+    }
+
+    /**
+     * This object keeps the state of one batch shared between workers.
+     */
+    private class Job implements Runnable {
+
+        private Throwable fError;
+
+        private Object[] fInputs;
+
+        private CountDownLatch fLatch;
+
+        private IDigestListener fListener;
+
+        private AtomicInteger fNext = new AtomicInteger();
+
+        private int fNotified;
+
+        private Sha1Digest[] fResults;
+
+        private int fStep;
+
+        public Job(Object[] inputs, IDigestListener listener, int workers) {
+            fInputs = inputs;
+            fListener = listener;
+            fResults = new Sha1Digest[inputs.length];
+            fLatch = new CountDownLatch(workers);
+            fStep = Math.max(1, Math.min(64, inputs.length / (workers * 8)));
+        }
+
+        private synchronized void onError(Throwable e) {
+            if (fError == null) {
+                fError = e;
+            }
+            fNext.set(fInputs.length);
+        }
+
+        private void onRejected(RuntimeException e) {
+            onError(e);
+            fLatch.countDown();
+        }
+
+        private void onResult(int index, Sha1Digest digest) {
+            if (fListener == null) {
+                fResults[index] = digest;
+            } else if (!fOrdered) {
+                fResults[index] = digest;
+                fListener.onDigest(index, fInputs[index], digest);
+            } else {
+                synchronized (this) {
+                    fResults[index] = digest;
+                    while (fNotified < fResults.length
+                        && fResults[fNotified] != null) {
+                        fListener.onDigest(
+                            fNotified,
+                            fInputs[fNotified],
+                            fResults[fNotified]);
+                        fNotified++;
+                    }
+                }
+            }
+        }
+
+        public void run() {
+            try {
+                SHA1 digest = new SHA1();
+                while (true) {
+                    int from = fNext.getAndAdd(fStep);
+                    if (from >= fInputs.length) {
+                        break;
+                    }
+                    int to = Math.min(from + fStep, fInputs.length);
+                    for (int i = from; i < to; i++) {
+                        update(digest, fInputs[i]);
+                        onResult(i, Sha1Digest.finish(digest));
+                    }
+                }
+            } catch (Throwable e) {
+                onError(e);
+            } finally {
+                fLatch.countDown();
+            }
+        }
+
+        public Sha1Digest[] waitForResults() throws IOException {
+            try {
+                fLatch.await();
+            } catch (InterruptedException e) {
+                onError(e);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            synchronized (this) {
+                if (fError instanceof IOException) {
+                    throw (IOException) fError;
+                } else if (fError instanceof RuntimeException) {
+                    throw (RuntimeException) fError;
+                } else if (fError != null) {
+                    throw new IOException(fError);
+                }
+            }
+            return fResults;
+        }
+
+    }
+
+    private static Executor fDefaultExecutor;
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the executor shared by all batches, tree hashes and other
+     * parallel digest computations created without an explicit executor.
+     * 
+     * @return the shared executor
+     */
+    public static synchronized Executor getDefaultExecutor() {
+        if (fDefaultExecutor == null) {
+            fDefaultExecutor = new ForkJoinPool();
+        }
+        return fDefaultExecutor;
+    }
+
+    /**
+     * Adds the given message to the specified digest.
+     */
+    private static void update(SHA1 digest, Object input) throws IOException {
+        if (input instanceof CharSequence) {
+            digest.update((CharSequence) input);
+        } else if (input instanceof byte[]) {
+            digest.update((byte[]) input);
+        } else if (input instanceof ByteBuffer) {
+            DigestBuffers.update(digest, ((ByteBuffer) input).duplicate());
+        } else if (input instanceof File) {
+            update(digest, ((File) input).toPath());
+        } else if (input instanceof Path) {
+            update(digest, (Path) input);
+        } else if (input instanceof IInput) {
+            ((IInput) input).update(digest);
+        } else {
+            throw new IllegalArgumentException("Unsupported input: " + input);
+        }
+    }
+
+    private static void update(SHA1 digest, Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            Sha1Files.update(digest, channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private Executor fExecutor;
+
+    private boolean fOrdered;
+
+    private int fParallelism;
+
+    private Sha1Batch(Executor executor, int parallelism, boolean ordered) {
+        fExecutor = executor;
+        fParallelism = parallelism;
+        fOrdered = ordered;
+    }
+
+    /**
+     * Calculates digests of all given messages and returns them in the order
+     * of inputs.
+     * 
+     * @param inputs messages to hash
+     * @return a list of digests in the order of inputs
+     * @throws IOException if a file can not be read
+     */
+    public List<Sha1Digest> digest(Collection<?> inputs) throws IOException {
+        Sha1Digest[] results = run(inputs.toArray(), null);
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Calculates digests of all given messages and notifies the specified
+     * listener about each of them. This method returns when all messages are
+     * hashed.
+     * 
+     * @param inputs messages to hash
+     * @param listener the listener to notify
+     * @throws IOException if a file can not be read
+     */
+    public void digest(Collection<?> inputs, IDigestListener listener)
+        throws IOException {
+        run(inputs.toArray(), listener);
+    }
+
+    public int getParallelism() {
+        return fParallelism;
+    }
+
+    public boolean isOrdered() {
+        return fOrdered;
+    }
+
+    private Sha1Digest[] run(Object[] inputs, IDigestListener listener)
+        throws IOException {
+        int workers = Math.max(1, Math.min(fParallelism, inputs.length));
+        Job job = new Job(inputs, listener, workers);
+        for (int i = 0; i < workers; i++) {
+            try {
+                fExecutor.execute(job);
+            } catch (RuntimeException e) {
+                job.onRejected(e);
+            }
+        }
+        return job.waitForResults();
+    }
+
+}
@@ -0,0 +1,380 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ * 
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.digests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class splits streams in chunks with content-defined boundaries and
+ * calculates the SHA1 digest of each chunk. Boundaries are detected using the
+ * Gear rolling hash with the normalized chunking of the FastCDC algorithm:
+ * before the average chunk size a boundary requires more zero bits in the
+ * hash than after it, so chunk sizes are concentrated around the average.
+ * The same content always gives the same boundaries, so an insertion or a
+ * deletion in a stream changes only the chunks around the modification.
+ * <p>
+ * Boundary detection and hashing are done in one pass: bytes are hashed by
+ * SHA1 directly from the read buffer (or from the given {@link ByteBuffer})
+ * and chunks are never copied. The Gear table is generated from a fixed seed,
+ * so boundaries are stable between versions. This class is not available in
+ * GWT clients.
+ * </p>
+ * 
+ * <pre>
+ * Sha1Chunker chunker = Sha1Chunker.builder().averageSize(8192).build();
+ * for (Sha1Chunker.Chunk chunk : chunker.split(input)) {
+ *     store(chunk.getDigest(), chunk.getOffset(), chunk.getLength());
+ * }
+ * </pre>
+ * 
+ * @author kotelnikov
+ */
+public class Sha1Chunker {
+
+    public static class Builder {
+
+        private int fAverageSize = 8 * 1024;
+
+        private int fMaxSize = -1;
+
+        private int fMinSize = -1;
+
+        /**
+         * Sets the average chunk size; it should be a power of two (8 KB by
+         * default). By default the minimal size is a quarter and the maximal
+         * size is eight times the average size.
+         */
+        public Builder averageSize(int averageSize) {
+            if (averageSize < 64 || Integer.bitCount(averageSize) != 1) {
+                throw new IllegalArgumentException(
+                    "Average size should be a power of two not less than 64: "
+                        + averageSize);
+            }
+            fAverageSize = averageSize;
+            return this;
+        }
+
+        public Sha1Chunker build() {
+            int min = fMinSize >= 0 ? fMinSize : fAverageSize / 4;
+            int max = fMaxSize >= 0 ? fMaxSize : fAverageSize * 8;
+            if (min > fAverageSize || max < fAverageSize) {
+                throw new IllegalArgumentException(
+                    "Sizes should be ordered: min <= average <= max");
+            }
+            return new Sha1Chunker(min, fAverageSize, max);
+        }
+
+        public Builder maxSize(int maxSize) {
+            fMaxSize = maxSize;
+            return this;
+        }
+
+        public Builder minSize(int minSize) {
+            fMinSize = minSize;
+            return this;
+        }
+
+    }
+
+    /**
+     * A chunk of a stream.
+     * 
+     * @author kotelnikov
+     */
+    public static class Chunk {
+
+        private final Sha1Digest fDigest;
+
+        private final int fLength;
+
+        private final long fOffset;
+
+        public Chunk(long offset, int length, Sha1Digest digest) {
+            fOffset = offset;
+            fLength = length;
+            fDigest = digest;
+        }
+
+        /**
+         * @return the digest of the chunk content
+         */
+        public Sha1Digest getDigest() {
+            return fDigest;
+        }
+
+        /**
+         * @return the number of bytes in the chunk
+         */
+        public int getLength() {
+            return fLength;
+        }
+
+        /**
+         * @return the position of the first byte of the chunk in the stream
+         */
+        public long getOffset() {
+            return fOffset;
+        }
+
+        @Override
+        public String toString() {
+            return fDigest + " [" + fOffset + ", " + fLength + "]";
+        }
+
+    }
+
+    /**
+     * Listeners of this type are notified about chunks in the order of their
+     * positions in the stream.
+     * 
+     * @author kotelnikov
+     */
+    public interface IChunkListener {
+
+        void onChunk(Chunk chunk) throws IOException;
+    }
+
+    /**
+     * This object keeps the state of the current chunk between calls of the
+     * {@link #scan(ByteBuffer)} method.
+     */
+    private class Scanner {
+
+        private SHA1 fDigest = new SHA1();
+
+        private long fHash;
+
+        private int fLength;
+
+        private IChunkListener fListener;
+
+        private long fOffset;
+
+        public Scanner(IChunkListener listener) {
+            fListener = listener;
+        }
+
+        private void emit() throws IOException {
+            Chunk chunk = new Chunk(
+                fOffset,
+                fLength,
+                Sha1Digest.finish(fDigest));
+            fOffset += fLength;
+            fLength = 0;
+            fHash = 0;
+            fListener.onChunk(chunk);
+        }
+
+        public void finish() throws IOException {
+            if (fLength > 0) {
+                emit();
+            }
+        }
+
+        /**
+         * Scans all remaining bytes of the given buffer. After this method
+         * call the position of the buffer is equal to its limit.
+         */
+        public void scan(ByteBuffer buf) throws IOException {
+            ByteBuffer view = buf.duplicate();
+            int pos = buf.position();
+            int end = buf.limit();
+            while (pos < end) {
+                int start = pos;
+                boolean boundary = false;
+                if (fLength < fMinSize) {
+                    // Boundaries are not checked in the first bytes
+                    int skip = Math.min(end - pos, fMinSize - fLength);
+                    pos += skip;
+                    fLength += skip;
+                    // The chunk can be full already if min == max
+                    boundary = fLength >= fMaxSize;
+                }
+                long hash = fHash;
+                int len = fLength;
+                while (!boundary && pos < end) {
+                    hash = (hash << 1) + GEAR[buf.get(pos++) & 0xFF];
+                    len++;
+                    long mask = len < fAverageSize ? fMaskS : fMaskL;
+                    if ((hash & mask) == 0 || len >= fMaxSize) {
+                        boundary = true;
+                        break;
+                    }
+                }
+                fHash = hash;
+                fLength = len;
+                view.limit(pos).position(start);
+                DigestBuffers.update(fDigest, view);
+                if (boundary) {
+                    emit();
+                }
+            }
+            buf.position(end);
+        }
+
+    }
+
+    /**
+     * The Gear table: 256 random values generated by the SplitMix64
+     * generator from a fixed seed.
+     */
+    private static final long[] GEAR = new long[256];
+
+    private static final int READ_BUFFER_SIZE = 256 * 1024;
+
+    static {
+        long seed = 0x5DEECE66DL;
+        for (int i = 0; i < GEAR.length; i++) {
+            long z = (seed += 0x9E3779B97F4A7C15L);
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns a mask selecting the given number of the highest bits. The
+     * highest bits of the Gear hash depend on the largest window of bytes.
+     */
+    private static long getMask(int bits) {
+        return bits <= 0 ? 0 : -1L << (64 - bits);
+    }
+
+    private final int fAverageSize;
+
+    /**
+     * The mask used after the average size; it has less bits.
+     */
+    private final long fMaskL;
+
+    /**
+     * The mask used before the average size; it has more bits.
+     */
+    private final long fMaskS;
+
+    private final int fMaxSize;
+
+    private final int fMinSize;
+
+    private Sha1Chunker(int minSize, int averageSize, int maxSize) {
+        fMinSize = minSize;
+        fAverageSize = averageSize;
+        fMaxSize = Math.max(1, maxSize);
+        int bits = Integer.numberOfTrailingZeros(averageSize);
+        fMaskS = getMask(bits + 2);
+        fMaskL = getMask(bits - 2);
+    }
+
+    public int getAverageSize() {
+        return fAverageSize;
+    }
+
+    public int getMaxSize() {
+        return fMaxSize;
+    }
+
+    public int getMinSize() {
+        return fMinSize;
+    }
+
+    /**
+     * Splits all remaining bytes of the given buffer in chunks. After this
+     * method call the position of the buffer is equal to its limit.
+     * 
+     * @param buf the buffer to split
+     * @return a list of chunks
+     */
+    public List<Chunk> split(ByteBuffer buf) {
+        final List<Chunk> result = new ArrayList<Chunk>();
+        try {
+            split(buf, new IChunkListener() {
+                public void onChunk(Chunk chunk) {
+                    result.add(chunk);
+                }
+            });
+        } catch (IOException e) {
+            // Never happens: the listener does not throw exceptions
+            throw new IllegalStateException(e);
+        }
+        return result;
+    }
+
+    /**
+     * Splits all remaining bytes of the given buffer in chunks and notifies
+     * the listener about each of them.
+     * 
+     * @param buf the buffer to split
+     * @param listener the listener to notify
+     * @throws IOException if the listener fails
+     */
+    public void split(ByteBuffer buf, IChunkListener listener)
+        throws IOException {
+        Scanner scanner = new Scanner(listener);
+        scanner.scan(buf);
+        scanner.finish();
+    }
+
+    /**
+     * Splits the content of the given stream in chunks. The stream is not
+     * closed by this method.
+     * 
+     * @param input the stream to split
+     * @return a list of chunks
+     * @throws IOException if the stream can not be read
+     */
+    public List<Chunk> split(InputStream input) throws IOException {
+        final List<Chunk> result = new ArrayList<Chunk>();
+        split(input, new IChunkListener() {
+            public void onChunk(Chunk chunk) {
+                result.add(chunk);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Splits the content of the given stream in chunks and notifies the
+     * listener about each of them. The stream is not closed by this method.
+     * 
+     * @param input the stream to split
+     * @param listener the listener to notify
+     * @throws IOException if the stream can not be read or if the listener
+     *         fails
+     */
+    public void split(InputStream input, IChunkListener listener)
+        throws IOException {
+        Scanner scanner = new Scanner(listener);
+        byte[] array = new byte[READ_BUFFER_SIZE];
+        ByteBuffer buf = ByteBuffer.wrap(array);
+        int len;
+        while ((len = input.read(array)) >= 0) {
+            buf.clear();
+            buf.limit(len);
+            scanner.scan(buf);
+        }
+        scanner.finish();
+    }
+
+}
@@ -19,27 +19,60 @@ package org.ubimix.commons.digests;
 import org.ubimix.commons.digests.SHA1.IByteProvider;
 
 /**
- * This class is used to calculate SHA1 digests of binary data. This class can
- * be used to calculate hashes of multiple byte sequences until method
- * {@link #getDigest()} or {@link #getDigestString()} is called. These methods
- * "finalize" digest calculation, return the digest and reset all internal
- * fields. So after these method calls the same {@link Sha1Digest} class can be
- * re-used to calculate a new digest. This class can be used on the server side
- * as well as in GWT clients because it does not use bytes - all digest
- * calculations are based on manipulations with integers.
+ * This class represents a calculated SHA1 digest. Instances of this class are
+ * immutable values keeping the five words of the digest in fields, so they
+ * are compact and can be used as keys in large maps: they are compared by
+ * value and ordered as unsigned sequences of bytes. Digests are calculated
+ * using {@link Builder}s. This class can be used on the server side as well
+ * as in GWT clients.
  * 
  * @author kotelnikov
  */
-public class Sha1Digest {
+public class Sha1Digest implements Comparable<Sha1Digest> {
 
     public static class Builder {
-        private SHA1 fDigest = new SHA1();
 
+        /**
+         * This digest is lazily created and re-used to finish copies of the
+         * main digest.
+         */
+        private SHA1 fCopy;
+
+        private SHA1 fDigest;
+
+        public Builder() {
+            fDigest = new SHA1();
+        }
+
+        public Builder(Sha1State state) {
+            fDigest = new SHA1(state);
+        }
+
+        /**
+         * Returns the digest of all bytes added so far. This builder can be
+         * used to add new bytes after this method call.
+         * 
+         * @return the digest of all bytes added so far
+         */
         public Sha1Digest build() {
-            SHA1 copy = new SHA1(fDigest);
-            copy.finish();
-            int[] digest = copy.getInternalDigest();
-            return new Sha1Digest(digest);
+            if (fCopy == null) {
+                fCopy = new SHA1();
+            }
+            fCopy.copyFrom(fDigest);
+            return finish(fCopy);
+        }
+
+        SHA1 getSHA1() {
+            return fDigest;
+        }
+
+        /**
+         * Returns a snapshot of the current state of this builder.
+         * 
+         * @return a snapshot of the current state of this builder
+         */
+        public Sha1State getState() {
+            return fDigest.getState();
         }
 
         @Override
@@ -47,6 +80,31 @@ public class Sha1Digest {
             return fDigest.toString();
         }
 
+        public Builder update(byte[] array) {
+            fDigest.update(array);
+            return this;
+        }
+
+        public Builder update(byte[] array, int offset, int len) {
+            fDigest.update(array, offset, len);
+            return this;
+        }
+
+        public Builder update(char[] array, int offset, int len) {
+            fDigest.update(array, offset, len);
+            return this;
+        }
+
+        public Builder update(CharSequence msg) {
+            fDigest.update(msg);
+            return this;
+        }
+
+        public Builder update(CharSequence msg, int start, int end) {
+            fDigest.update(msg, start, end);
+            return this;
+        }
+
         public Builder update(IByteProvider iterator) {
             fDigest.update(iterator);
             return this;
@@ -68,33 +126,245 @@ public class Sha1Digest {
         return new Builder();
     }
 
-    private int[] fDigest;
+    /**
+     * Returns a new builder restored from the given snapshot.
+     * 
+     * @param state the state of the new builder
+     * @return a new builder
+     */
+    public static Sha1Digest.Builder builder(Sha1State state) {
+        return new Builder(state);
+    }
 
-    private Sha1Digest(int[] digest) {
-        fDigest = digest;
+    private static int compareUnsigned(int first, int second) {
+        first ^= 0x80000000;
+        second ^= 0x80000000;
+        return first < second ? -1 : (first == second ? 0 : 1);
+    }
+
+    /**
+     * Finalizes the given digest, returns the resulting value and resets the
+     * digest, so it can be re-used to calculate a new value.
+     * 
+     * @param digest the digest to finalize
+     * @return the calculated value
+     */
+    static Sha1Digest finish(SHA1 digest) {
+        digest.finish();
+        Sha1Digest result = new Sha1Digest(digest.getInternalDigest());
+        digest.reset();
+        return result;
+    }
+
+    /**
+     * Creates a digest from 20 bytes of the given array.
+     * 
+     * @param array the array containing the digest bytes
+     * @param offset the position of the first byte of the digest
+     * @return a new digest
+     */
+    public static Sha1Digest fromBytes(byte[] array, int offset) {
+        if (offset < 0 || offset > array.length - 20) {
+            throw new IndexOutOfBoundsException();
+        }
+        return new Sha1Digest(
+            getInt(array, offset),
+            getInt(array, offset + 4),
+            getInt(array, offset + 8),
+            getInt(array, offset + 12),
+            getInt(array, offset + 16));
+    }
+
+    /**
+     * Creates a digest from its five 32-bit words.
+     * 
+     * @return a new digest
+     */
+    public static Sha1Digest fromWords(int h0, int h1, int h2, int h3, int h4) {
+        return new Sha1Digest(h0, h1, h2, h3, h4);
+    }
+
+    private static int getInt(byte[] array, int pos) {
+        return (array[pos] << 24)
+            | ((array[pos + 1] & 0xFF) << 16)
+            | ((array[pos + 2] & 0xFF) << 8)
+            | (array[pos + 3] & 0xFF);
+    }
+
+    private static int putInt(byte[] array, int pos, int value) {
+        array[pos++] = (byte) (value >>> 24);
+        array[pos++] = (byte) (value >>> 16);
+        array[pos++] = (byte) (value >>> 8);
+        array[pos++] = (byte) value;
+        return pos;
+    }
+
+    private final int fH0;
+
+    private final int fH1;
+
+    private final int fH2;
+
+    private final int fH3;
+
+    private final int fH4;
+
+    Sha1Digest(int h0, int h1, int h2, int h3, int h4) {
+        fH0 = h0;
+        fH1 = h1;
+        fH2 = h2;
+        fH3 = h3;
+        fH4 = h4;
+    }
+
+    Sha1Digest(int[] digest) {
+        this(digest[0], digest[1], digest[2], digest[3], digest[4]);
+    }
+
+    /**
+     * Compares digests as unsigned sequences of bytes.
+     * 
+     * @see java.lang.Comparable#compareTo(java.lang.Object)
+     */
+    public int compareTo(Sha1Digest o) {
+        int result = compareUnsigned(fH0, o.fH0);
+        if (result == 0) {
+            result = compareUnsigned(fH1, o.fH1);
+        }
+        if (result == 0) {
+            result = compareUnsigned(fH2, o.fH2);
+        }
+        if (result == 0) {
+            result = compareUnsigned(fH3, o.fH3);
+        }
+        if (result == 0) {
+            result = compareUnsigned(fH4, o.fH4);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Sha1Digest)) {
+            return false;
+        }
+        Sha1Digest o = (Sha1Digest) obj;
+        return fH0 == o.fH0
+            && fH1 == o.fH1
+            && fH2 == o.fH2
+            && fH3 == o.fH3
+            && fH4 == o.fH4;
+    }
+
+    /**
+     * Writes the 20 bytes of this digest in the given array.
+     * 
+     * @param array the destination array
+     * @param offset the position where the first byte should be written
+     * @return the position after the last written byte
+     */
+    public int getBytes(byte[] array, int offset) {
+        if (offset < 0 || offset > array.length - 20) {
+            throw new IndexOutOfBoundsException();
+        }
+        offset = putInt(array, offset, fH0);
+        offset = putInt(array, offset, fH1);
+        offset = putInt(array, offset, fH2);
+        offset = putInt(array, offset, fH3);
+        offset = putInt(array, offset, fH4);
+        return offset;
     }
 
     /**
      * @return an array where each cell corresponds to a byte
      */
     public int[] getDigest() {
-        return SHA1.getDigestAsByteArray(fDigest);
+        return SHA1.getDigestAsByteArray(getInternalDigest());
     }
 
     /**
-     * Returns an array of integer values where each value corresponds to 4
+     * Returns a new array of integer values where each value corresponds to 4
      * bytes.
      * 
      * @return an array of integer values where each value corresponds to 4
      *         bytes
      */
     public int[] getInternalDigest() {
-        return fDigest;
+        return new int[] { fH0, fH1, fH2, fH3, fH4 };
+    }
+
+    /**
+     * Returns 8 bytes of this digest as a long value. The index 0 corresponds
+     * to the first 8 bytes, the index 1 to the next 8 bytes. The remaining 4
+     * bytes are returned by the {@link #getWord(int)} method with the index
+     * 4.
+     * 
+     * @param index the index of the long value (0 or 1)
+     * @return the requested 8 bytes of the digest
+     */
+    public long getLong(int index) {
+        switch (index) {
+            case 0:
+                return ((long) fH0 << 32) | (fH1 & 0xFFFFFFFFL);
+            case 1:
+                return ((long) fH2 << 32) | (fH3 & 0xFFFFFFFFL);
+            default:
+                throw new IndexOutOfBoundsException("Bad index: " + index);
+        }
+    }
+
+    /**
+     * Returns one of the five 32-bit words of this digest.
+     * 
+     * @param index the index of the word (from 0 to 4)
+     * @return the requested word
+     */
+    public int getWord(int index) {
+        switch (index) {
+            case 0:
+                return fH0;
+            case 1:
+                return fH1;
+            case 2:
+                return fH2;
+            case 3:
+                return fH3;
+            case 4:
+                return fH4;
+            default:
+                throw new IndexOutOfBoundsException("Bad index: " + index);
+        }
     }
 
+    /**
+     * Digests are uniformly distributed, so the first word is a good hash
+     * code.
+     */
+    @Override
+    public int hashCode() {
+        return fH0;
+    }
+
+    /**
+     * @return a new array containing the 20 bytes of this digest
+     */
+    public byte[] toByteArray() {
+        byte[] array = new byte[20];
+        getBytes(array, 0);
+        return array;
+    }
+
+    /**
+     * Returns the hex representation of this digest.
+     * 
+     * @see DigestEncoding#toHex(Sha1Digest)
+     */
     @Override
     public String toString() {
-        return SHA1.getDigestAsString(fDigest);
+        return DigestEncoding.toHex(this);
     }
 
 }
@@ -0,0 +1,437 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ * 
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.digests;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A set of SHA1 digests stored out of the Java heap. Digests are kept as 20
+ * raw bytes in open-addressing hash tables (with linear probing) allocated
+ * in direct buffers or in memory-mapped regions of a file, so billions of
+ * digests do not put any pressure on the garbage collector. The capacity is
+ * fixed when the set is created: the load factor of each segment is limited
+ * by 0.75, so probe sequences stay short, and segments are sized so that
+ * the given number of random digests fits in them with a high probability.
+ * <p>
+ * The set is split in segments (each one smaller than 2 GB) selected by the
+ * first word of the digest; the slot in a segment is selected by the second
+ * word. Digests are uniformly distributed, so they do not need any additional
+ * hashing. Each segment has its own {@link StampedLock}: additions lock only
+ * one segment and lookups are optimistic reads which take the lock only if
+ * they overlap with a modification of the segment. Methods taking the five
+ * words of digests do not allocate any objects.
+ * </p>
+ * <p>
+ * A set created with a file keeps its tables in this file; the set can be
+ * re-opened later with the same capacity. The number of digests is
+ * re-calculated by scanning the tables when a file is opened. This class is
+ * not available in GWT clients.
+ * </p>
+ * 
+ * @author kotelnikov
+ */
+public class Sha1DigestSet implements Closeable {
+
+    /**
+     * One hash table of the set.
+     */
+    private static class Segment {
+
+        private final ByteBuffer fBuf;
+
+        private int fCount;
+
+        private final StampedLock fLock = new StampedLock();
+
+        public Segment(ByteBuffer buf) {
+            fBuf = buf;
+        }
+
+    }
+
+    private static final int HEADER_SIZE = 16;
+
+    private static final int MAGIC = 0x53484153;
+
+    private static final int MAX_SEGMENT_SLOTS = 1 << 26;
+
+    private static final int MAX_SEGMENTS = 64;
+
+    private static final int MIN_SEGMENT_SLOTS = 1 << 10;
+
+    private static final int SLOT_SIZE = 20;
+
+    private static int getSegmentCount(long slots) {
+        int segments = 1;
+        while (segments < MAX_SEGMENTS
+            && slots / segments > MIN_SEGMENT_SLOTS) {
+            segments <<= 1;
+        }
+        while (slots / segments > MAX_SEGMENT_SLOTS) {
+            segments <<= 1;
+        }
+        return segments;
+    }
+
+    /**
+     * Returns the maximal number of digests in a segment with the given
+     * number of slots: the load factor is not greater than 0.75.
+     */
+    private static int getSegmentLimit(int segmentSlots) {
+        return segmentSlots / 4 * 3;
+    }
+
+    /**
+     * Returns the number of slots required to keep the given number of
+     * digests with the load factor not greater than 0.75 in each segment.
+     * Digests are distributed between segments randomly, so a segment gets
+     * five standard deviations above the average number of digests. The
+     * result is a power of two.
+     */
+    private static long getSlotCount(long capacity) {
+        long slots = MIN_SEGMENT_SLOTS;
+        while (true) {
+            int segments = getSegmentCount(slots);
+            double count = (double) capacity / segments;
+            if (segments > 1) {
+                count += 5 * Math.sqrt(count);
+            }
+            if (count <= getSegmentLimit((int) (slots / segments))) {
+                return slots;
+            }
+            slots <<= 1;
+        }
+    }
+
+    private final long fCapacity;
+
+    private FileChannel fChannel;
+
+    private final AtomicBoolean fHasZero = new AtomicBoolean();
+
+    private final int fSegmentLimit;
+
+    private final int fSegmentMask;
+
+    private final Segment[] fSegments;
+
+    private final int fSegmentShift;
+
+    private final int fSlotMask;
+
+    /**
+     * Creates a new set in direct buffers.
+     * 
+     * @param capacity the expected maximal number of digests
+     */
+    public Sha1DigestSet(long capacity) {
+        long slots = getSlotCount(capacity);
+        int segments = getSegmentCount(slots);
+        int segmentSlots = (int) (slots / segments);
+        fSegments = new Segment[segments];
+        for (int i = 0; i < segments; i++) {
+            fSegments[i] = new Segment(ByteBuffer.allocateDirect(segmentSlots
+                * SLOT_SIZE));
+        }
+        fCapacity = capacity;
+        fSegmentLimit = getSegmentLimit(segmentSlots);
+        fSegmentMask = segments - 1;
+        fSegmentShift = 32 - Integer.numberOfTrailingZeros(segments);
+        fSlotMask = segmentSlots - 1;
+    }
+
+    /**
+     * Opens a set stored in the given file. If the file does not exist then
+     * it is created. An existing file should be created with the same
+     * capacity.
+     * 
+     * @param file the file keeping the set
+     * @param capacity the expected maximal number of digests
+     * @throws IOException if the file can not be opened or if it was created
+     *         with another capacity
+     */
+    public Sha1DigestSet(File file, long capacity) throws IOException {
+        long slots = getSlotCount(capacity);
+        int segments = getSegmentCount(slots);
+        int segmentSlots = (int) (slots / segments);
+        fChannel = FileChannel.open(
+            file.toPath(),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        boolean hasZero = false;
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            boolean exists = fChannel.size() > 0;
+            if (exists) {
+                while (header.hasRemaining()
+                    && fChannel.read(header, header.position()) >= 0) {
+                }
+                if (header.getInt(0) != MAGIC
+                    || header.getInt(4) != segments
+                    || header.getInt(8) != segmentSlots) {
+                    throw new IOException("The file "
+                        + file
+                        + " does not contain a digest set of this capacity");
+                }
+                hasZero = header.getInt(12) != 0;
+            } else {
+                header.putInt(MAGIC).putInt(segments).putInt(segmentSlots);
+                header.putInt(0).flip();
+                fChannel.write(header, 0);
+            }
+            fSegments = new Segment[segments];
+            long size = (long) segmentSlots * SLOT_SIZE;
+            for (int i = 0; i < segments; i++) {
+                MappedByteBuffer buf = fChannel.map(
+                    FileChannel.MapMode.READ_WRITE,
+                    HEADER_SIZE + i * size,
+                    size);
+                fSegments[i] = new Segment(buf);
+            }
+        } catch (IOException e) {
+            fChannel.close();
+            throw e;
+        }
+        fCapacity = capacity;
+        fSegmentLimit = getSegmentLimit(segmentSlots);
+        fSegmentMask = segments - 1;
+        fSegmentShift = 32 - Integer.numberOfTrailingZeros(segments);
+        fSlotMask = segmentSlots - 1;
+        for (Segment segment : fSegments) {
+            segment.fCount = countSlots(segment.fBuf);
+        }
+        fHasZero.set(hasZero);
+    }
+
+    /**
+     * Adds the given digest to this set.
+     * 
+     * @param digest the digest to add
+     * @return <code>true</code> if the digest was added and
+     *         <code>false</code> if this set already contains it
+     */
+    public boolean add(Sha1Digest digest) {
+        return add(
+            digest.getWord(0),
+            digest.getWord(1),
+            digest.getWord(2),
+            digest.getWord(3),
+            digest.getWord(4));
+    }
+
+    /**
+     * Adds the digest with the given words to this set.
+     * 
+     * @return <code>true</code> if the digest was added and
+     *         <code>false</code> if this set already contains it
+     * @throws IllegalStateException if the segment of the digest is full:
+     *         it is loaded by 0.75
+     */
+    public boolean add(int h0, int h1, int h2, int h3, int h4) {
+        if ((h0 | h1 | h2 | h3 | h4) == 0) {
+            return addZero();
+        }
+        Segment segment = fSegments[(h0 >>> fSegmentShift) & fSegmentMask];
+        long stamp = segment.fLock.writeLock();
+        try {
+            int slot = find(segment.fBuf, h0, h1, h2, h3, h4);
+            if (slot >= 0) {
+                return false;
+            }
+            if (segment.fCount >= fSegmentLimit) {
+                throw new IllegalStateException("The digest set is full");
+            }
+            int pos = (-slot - 1) * SLOT_SIZE;
+            ByteBuffer buf = segment.fBuf;
+            buf.putInt(pos, h0);
+            buf.putInt(pos + 4, h1);
+            buf.putInt(pos + 8, h2);
+            buf.putInt(pos + 12, h3);
+            buf.putInt(pos + 16, h4);
+            segment.fCount++;
+            return true;
+        } finally {
+            segment.fLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * The zero digest marks empty slots, so it is kept in a flag. For
+     * persistent sets the flag is stored in the header of the file.
+     */
+    private boolean addZero() {
+        boolean result = fHasZero.compareAndSet(false, true);
+        if (result && fChannel != null) {
+            ByteBuffer buf = ByteBuffer.allocate(4);
+            buf.putInt(0, 1);
+            try {
+                fChannel.write(buf, 12);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Closes the file of a persistent set. The set should not be used after
+     * this method call.
+     */
+    public void close() throws IOException {
+        if (fChannel != null) {
+            flush();
+            fChannel.close();
+        }
+    }
+
+    /**
+     * @param digest the digest to check
+     * @return <code>true</code> if this set contains the given digest
+     */
+    public boolean contains(Sha1Digest digest) {
+        return contains(
+            digest.getWord(0),
+            digest.getWord(1),
+            digest.getWord(2),
+            digest.getWord(3),
+            digest.getWord(4));
+    }
+
+    /**
+     * @return <code>true</code> if this set contains the digest with the
+     *         given words
+     */
+    public boolean contains(int h0, int h1, int h2, int h3, int h4) {
+        if ((h0 | h1 | h2 | h3 | h4) == 0) {
+            return fHasZero.get();
+        }
+        Segment segment = fSegments[(h0 >>> fSegmentShift) & fSegmentMask];
+        StampedLock lock = segment.fLock;
+        long stamp = lock.tryOptimisticRead();
+        boolean result = find(segment.fBuf, h0, h1, h2, h3, h4) >= 0;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                result = find(segment.fBuf, h0, h1, h2, h3, h4) >= 0;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return result;
+    }
+
+    private int countSlots(ByteBuffer buf) {
+        int count = 0;
+        for (int pos = 0; pos < buf.capacity(); pos += SLOT_SIZE) {
+            if ((buf.getInt(pos)
+                | buf.getInt(pos + 4)
+                | buf.getInt(pos + 8)
+                | buf.getInt(pos + 12)
+                | buf.getInt(pos + 16)) != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Looks for the slot of the given digest.
+     * 
+     * @return the index of the slot containing the digest or
+     *         <code>-(index + 1)</code> where <code>index</code> is the
+     *         first empty slot where the digest can be added
+     */
+    private int find(ByteBuffer buf, int h0, int h1, int h2, int h3, int h4) {
+        int slot = h1 & fSlotMask;
+        for (int i = 0; i <= fSlotMask; i++) {
+            int pos = slot * SLOT_SIZE;
+            int w0 = buf.getInt(pos);
+            if (w0 == h0
+                && buf.getInt(pos + 4) == h1
+                && buf.getInt(pos + 8) == h2
+                && buf.getInt(pos + 12) == h3
+                && buf.getInt(pos + 16) == h4) {
+                return slot;
+            }
+            if (w0 == 0
+                && (buf.getInt(pos + 4)
+                    | buf.getInt(pos + 8)
+                    | buf.getInt(pos + 12)
+                    | buf.getInt(pos + 16)) == 0) {
+                return -slot - 1;
+            }
+            slot = (slot + 1) & fSlotMask;
+        }
+        return -1;
+    }
+
+    /**
+     * Writes all modifications of a persistent set to the disk.
+     * 
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        for (Segment segment : fSegments) {
+            if (segment.fBuf instanceof MappedByteBuffer) {
+                ((MappedByteBuffer) segment.fBuf).force();
+            }
+        }
+        if (fChannel != null) {
+            fChannel.force(false);
+        }
+    }
+
+    /**
+     * Returns the number of digests this set was created for. Random digests
+     * fit in the set up to this number with a high probability; more digests
+     * can be added while their segments are loaded by less than 0.75.
+     * 
+     * @return the number of digests this set was sized for
+     */
+    public long getCapacity() {
+        return fCapacity;
+    }
+
+    /**
+     * Returns the number of digests in this set. This value is exact only if
+     * the set is not modified at the same time.
+     * 
+     * @return the number of digests in this set
+     */
+    public long size() {
+        long result = fHasZero.get() ? 1 : 0;
+        for (Segment segment : fSegments) {
+            long stamp = segment.fLock.readLock();
+            try {
+                result += segment.fCount;
+            } finally {
+                segment.fLock.unlockRead(stamp);
+            }
+        }
+        return result;
+    }
+
+}
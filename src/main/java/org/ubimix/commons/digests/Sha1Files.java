@@ -0,0 +1,228 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ * 
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.digests;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class contains methods calculating digests of files and channels.
+ * Files are walked through memory-mapped windows, so their content is hashed
+ * directly from the page cache without copies on the heap. Channels which
+ * can not be mapped are read in a large direct buffer re-used by each thread.
+ * This class is not available in GWT clients.
+ * 
+ * @author kotelnikov
+ */
+public class Sha1Files {
+
+    /**
+     * The size of direct buffers used to read channels which can not be
+     * mapped in memory.
+     */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    };
+
+    /**
+     * The maximal size of memory-mapped windows.
+     */
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Returns the digest of the content of the given channel starting from
+     * its current position. After this method call the channel is positioned
+     * at its end.
+     * 
+     * @param channel the channel to hash
+     * @return the digest of the channel content
+     * @throws IOException
+     */
+    public static Sha1Digest ofChannel(FileChannel channel) throws IOException {
+        SHA1 digest = new SHA1();
+        update(digest, channel);
+        return Sha1Digest.finish(digest);
+    }
+
+    /**
+     * Returns the digest of all bytes remaining in the given channel.
+     * 
+     * @param channel the channel to hash
+     * @return the digest of the channel content
+     * @throws IOException
+     */
+    public static Sha1Digest ofChannel(ReadableByteChannel channel)
+        throws IOException {
+        SHA1 digest = new SHA1();
+        update(digest, channel);
+        return Sha1Digest.finish(digest);
+    }
+
+    /**
+     * Returns the digest of the content of the specified file.
+     * 
+     * @param file the file to hash
+     * @return the digest of the file content
+     * @throws IOException
+     */
+    public static Sha1Digest ofFile(File file) throws IOException {
+        return ofFile(file.toPath());
+    }
+
+    /**
+     * Returns the digest of the content of the specified file.
+     * 
+     * @param path the path to the file to hash
+     * @return the digest of the file content
+     * @throws IOException
+     */
+    public static Sha1Digest ofFile(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return ofChannel(channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Adds the content of the given channel starting from its current
+     * position to the specified digest. After this method call the channel is
+     * positioned at its end.
+     * 
+     * @param digest the digest to update
+     * @param channel the channel to hash
+     * @return the updated digest
+     * @throws IOException
+     */
+    public static SHA1 update(SHA1 digest, FileChannel channel)
+        throws IOException {
+        return update(digest, channel, WINDOW_SIZE);
+    }
+
+    /**
+     * This method maps windows of the given size and adds them to the
+     * digest. If the channel can not be mapped then it is read using a direct
+     * buffer. Note that mapped windows are released only when they are
+     * garbage collected.
+     */
+    static SHA1 update(SHA1 digest, FileChannel channel, int windowSize)
+        throws IOException {
+        long pos = channel.position();
+        long size = channel.size();
+        if (size == 0) {
+            // Special files (like pipes) can report zero size
+            return update(digest, (ReadableByteChannel) channel);
+        }
+        while (pos < size) {
+            long len = Math.min(windowSize, size - pos);
+            MappedByteBuffer buf;
+            try {
+                buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, len);
+            } catch (IOException | UnsupportedOperationException e) {
+                channel.position(pos);
+                return update(digest, (ReadableByteChannel) channel);
+            }
+            DigestBuffers.update(digest, buf);
+            pos += len;
+        }
+        channel.position(pos);
+        return digest;
+    }
+
+    /**
+     * Adds the specified region of the given file channel to the digest. The
+     * region is walked through memory-mapped windows; if the channel can not
+     * be mapped then it is read using positional reads. This method does not
+     * change the position of the channel, so it can be called by multiple
+     * threads for the same channel.
+     * 
+     * @param digest the digest to update
+     * @param channel the channel to hash
+     * @param position the position of the first byte to hash
+     * @param length the number of bytes to hash
+     * @return the updated digest
+     * @throws IOException if the region can not be read
+     */
+    public static SHA1 update(
+        SHA1 digest,
+        FileChannel channel,
+        long position,
+        long length) throws IOException {
+        long end = position + length;
+        while (position < end) {
+            long len = Math.min(WINDOW_SIZE, end - position);
+            MappedByteBuffer buf;
+            try {
+                buf = channel.map(FileChannel.MapMode.READ_ONLY, position, len);
+            } catch (IOException | UnsupportedOperationException e) {
+                break;
+            }
+            DigestBuffers.update(digest, buf);
+            position += len;
+        }
+        ByteBuffer buf = BUFFERS.get();
+        while (position < end) {
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(), end - position));
+            int len = channel.read(buf, position);
+            if (len < 0) {
+                throw new EOFException();
+            }
+            buf.flip();
+            DigestBuffers.update(digest, buf);
+            position += len;
+        }
+        return digest;
+    }
+
+    /**
+     * Adds all bytes remaining in the given channel to the specified digest.
+     * 
+     * @param digest the digest to update
+     * @param channel the channel to hash
+     * @return the updated digest
+     * @throws IOException
+     */
+    public static SHA1 update(SHA1 digest, ReadableByteChannel channel)
+        throws IOException {
+        ByteBuffer buf = BUFFERS.get();
+        while (true) {
+            buf.clear();
+            int len = channel.read(buf);
+            if (len < 0) {
+                break;
+            }
+            buf.flip();
+            DigestBuffers.update(digest, buf);
+        }
+        return digest;
+    }
+
+}
@@ -0,0 +1,102 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ * 
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.digests;
+
+/**
+ * This class gives access to thread-local {@link SHA1} instances. It allows
+ * to calculate digests of short messages on hot paths without allocating new
+ * digest objects: the only created object is the result. This class is not
+ * available in GWT clients.
+ * <p>
+ * Note that the instance returned by the {@link #get()} method is shared with
+ * all other methods of this class called in the same thread. So it should
+ * not be used across calls of other methods of this class.
+ * </p>
+ * 
+ * @author kotelnikov
+ */
+public class Sha1Hashers {
+
+    private static final ThreadLocal<SHA1> HASHERS = new ThreadLocal<SHA1>() {
+        @Override
+        protected SHA1 initialValue() {
+            return new SHA1();
+        }
+    };
+
+    /**
+     * Returns the digest of the given bytes.
+     * 
+     * @param array the bytes to hash
+     * @return the digest of the given bytes
+     */
+    public static Sha1Digest digest(byte[] array) {
+        return digest(array, 0, array.length);
+    }
+
+    /**
+     * Returns the digest of the specified region of the given array.
+     * 
+     * @param array the array containing bytes to hash
+     * @param offset the position of the first byte to hash
+     * @param len the number of bytes to hash
+     * @return the digest of the specified bytes
+     */
+    public static Sha1Digest digest(byte[] array, int offset, int len) {
+        SHA1 digest = get();
+        digest.update(array, offset, len);
+        return Sha1Digest.finish(digest);
+    }
+
+    /**
+     * Returns the digest of the UTF-8 representation of the given string.
+     * 
+     * @param msg the string to hash
+     * @return the digest of the given string
+     */
+    public static Sha1Digest digest(String msg) {
+        SHA1 digest = get();
+        digest.update(msg);
+        return Sha1Digest.finish(digest);
+    }
+
+    /**
+     * Returns the hex representation of the digest of the given string.
+     * 
+     * @param msg the string to hash
+     * @return the hex representation of the digest of the given string
+     */
+    public static String digestString(String msg) {
+        SHA1 digest = get();
+        digest.update(msg);
+        return digest.getDigestString();
+    }
+
+    /**
+     * Returns the {@link SHA1} instance associated with the current thread.
+     * The returned instance is reset, so all previously added bytes are
+     * discarded.
+     * 
+     * @return a reset digest associated with the current thread
+     */
+    public static SHA1 get() {
+        SHA1 digest = HASHERS.get();
+        digest.reset();
+        return digest;
+    }
+
+}
@@ -0,0 +1,154 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ * 
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.digests;
+
+/**
+ * The SHA1 compression function used by the {@link SHA1} class. This is the
+ * JVM version of the kernel: the 80 rounds are split in four branch-free
+ * loops unrolled by five (so values never move between variables) and all
+ * additions use native integer arithmetic. GWT clients use a super-source
+ * variant of this class (see the "super" folder of the Utils module) which
+ * keeps 16-bit additions as a workaround for bugs in some java script
+ * interpreters. Both versions give identical results. Only the JVM version
+ * reports {@link Sha1Metrics}.
+ * 
+ * @author kotelnikov
+ */
+final class Sha1Kernel {
+
+    private static final int K0 = 0x5A827999;
+
+    private static final int K1 = 0x6ED9EBA1;
+
+    private static final int K2 = 0x8F1BBCDC;
+
+    private static final int K3 = 0xCA62C1D6;
+
+    /**
+     * Processes one 64-byte block and updates the chaining state.
+     * 
+     * @param state the five chaining words of the digest
+     * @param w the message schedule buffer; the first 16 cells contain the
+     *        block to process and the remaining 64 cells are used as a
+     *        scratch space
+     */
+    static void compress(int[] state, int[] w) {
+        if (Sha1Metrics.ENABLED) {
+            long start = Sha1Metrics.beginBlock();
+            compressBlock(state, w);
+            Sha1Metrics.endBlock(start);
+        } else {
+            compressBlock(state, w);
+        }
+    }
+
+    private static void compressBlock(int[] state, int[] w) {
+        for (int i = 16; i < 80; i++) {
+            w[i] = Integer.rotateLeft(
+                w[i - 3] ^ w[i - 8] ^ w[i - 14] ^ w[i - 16],
+                1);
+        }
+        int a = state[0];
+        int b = state[1];
+        int c = state[2];
+        int d = state[3];
+        int e = state[4];
+        for (int i = 0; i < 20; i += 5) {
+            e += Integer.rotateLeft(a, 5) + (d ^ (b & (c ^ d))) + w[i] + K0;
+            b = Integer.rotateLeft(b, 30);
+            d += Integer.rotateLeft(e, 5) + (c ^ (a & (b ^ c))) + w[i + 1] + K0;
+            a = Integer.rotateLeft(a, 30);
+            c += Integer.rotateLeft(d, 5) + (b ^ (e & (a ^ b))) + w[i + 2] + K0;
+            e = Integer.rotateLeft(e, 30);
+            b += Integer.rotateLeft(c, 5) + (a ^ (d & (e ^ a))) + w[i + 3] + K0;
+            d = Integer.rotateLeft(d, 30);
+            a += Integer.rotateLeft(b, 5) + (e ^ (c & (d ^ e))) + w[i + 4] + K0;
+            c = Integer.rotateLeft(c, 30);
+        }
+        for (int i = 20; i < 40; i += 5) {
+            e += Integer.rotateLeft(a, 5) + (b ^ c ^ d) + w[i] + K1;
+            b = Integer.rotateLeft(b, 30);
+            d += Integer.rotateLeft(e, 5) + (a ^ b ^ c) + w[i + 1] + K1;
+            a = Integer.rotateLeft(a, 30);
+            c += Integer.rotateLeft(d, 5) + (e ^ a ^ b) + w[i + 2] + K1;
+            e = Integer.rotateLeft(e, 30);
+            b += Integer.rotateLeft(c, 5) + (d ^ e ^ a) + w[i + 3] + K1;
+            d = Integer.rotateLeft(d, 30);
+            a += Integer.rotateLeft(b, 5) + (c ^ d ^ e) + w[i + 4] + K1;
+            c = Integer.rotateLeft(c, 30);
+        }
+        for (int i = 40; i < 60; i += 5) {
+            e += Integer.rotateLeft(a, 5)
+                + ((b & c) | (d & (b | c)))
+                + w[i]
+                + K2;
+            b = Integer.rotateLeft(b, 30);
+            d += Integer.rotateLeft(e, 5)
+                + ((a & b) | (c & (a | b)))
+                + w[i + 1]
+                + K2;
+            a = Integer.rotateLeft(a, 30);
+            c += Integer.rotateLeft(d, 5)
+                + ((e & a) | (b & (e | a)))
+                + w[i + 2]
+                + K2;
+            e = Integer.rotateLeft(e, 30);
+            b += Integer.rotateLeft(c, 5)
+                + ((d & e) | (a & (d | e)))
+                + w[i + 3]
+                + K2;
+            d = Integer.rotateLeft(d, 30);
+            a += Integer.rotateLeft(b, 5)
+                + ((c & d) | (e & (c | d)))
+                + w[i + 4]
+                + K2;
+            c = Integer.rotateLeft(c, 30);
+        }
+        for (int i = 60; i < 80; i += 5) {
+            e += Integer.rotateLeft(a, 5) + (b ^ c ^ d) + w[i] + K3;
+            b = Integer.rotateLeft(b, 30);
+            d += Integer.rotateLeft(e, 5) + (a ^ b ^ c) + w[i + 1] + K3;
+            a = Integer.rotateLeft(a, 30);
+            c += Integer.rotateLeft(d, 5) + (e ^ a ^ b) + w[i + 2] + K3;
+            e = Integer.rotateLeft(e, 30);
+            b += Integer.rotateLeft(c, 5) + (d ^ e ^ a) + w[i + 3] + K3;
+            d = Integer.rotateLeft(d, 30);
+            a += Integer.rotateLeft(b, 5) + (c ^ d ^ e) + w[i + 4] + K3;
+            c = Integer.rotateLeft(c, 30);
+        }
+        state[0] += a;
+        state[1] += b;
+        state[2] += c;
+        state[3] += d;
+        state[4] += e;
+    }
+
+    /**
+     * Should be called when a digest is finished.
+     * 
+     * @param length the length of the hashed message in bytes
+     */
+    static void onFinish(long length) {
+        if (Sha1Metrics.ENABLED) {
+            Sha1Metrics.onDigest(length);
+        }
+    }
+
+    private Sha1Kernel() {
+    }
+
+}
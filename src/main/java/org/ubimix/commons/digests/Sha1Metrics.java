@@ -0,0 +1,277 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ * 
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.digests;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * This class collects SHA1 hashing metrics: the number of compressed blocks,
+ * the number of finished digests, the total length of finished messages and
+ * the time spent in the compression function. Message lengths are counted
+ * only when digests are finished; the progress of all hashers, including
+ * unfinished, reset or abandoned ones, is given by the number of blocks.
+ * Metrics are disabled by default; they are enabled by the
+ * <code>-Dorg.ubimix.commons.digests.metrics=true</code> system property.
+ * When they are disabled the {@link #ENABLED} constant is <code>false</code>
+ * and the JIT compiler removes all instrumentation code from the kernel.
+ * <p>
+ * Counters are {@link LongAdder}s, so threads hashing in parallel do not
+ * contend on them. Reading the clock for each block would cost almost as
+ * much as its compression, so the time is measured for one block out of
+ * {@link #SAMPLE_RATE} (chosen at random) and multiplied by this rate. When
+ * metrics are enabled they are published as a JMX bean with the
+ * {@link #OBJECT_NAME} name; the same values are returned by the
+ * {@link #getSnapshot()} method. This class is not available in GWT clients.
+ * </p>
+ * 
+ * @author kotelnikov
+ */
+public class Sha1Metrics implements Sha1MetricsMBean {
+
+    /**
+     * An immutable copy of metric values.
+     * 
+     * @author kotelnikov
+     */
+    public static class Snapshot {
+
+        private final long fBlocks;
+
+        private final long fDigests;
+
+        private final long fFinishedBytes;
+
+        private final long fTimeNanos;
+
+        public Snapshot(
+            long blocks,
+            long finishedBytes,
+            long digests,
+            long timeNanos) {
+            fBlocks = blocks;
+            fFinishedBytes = finishedBytes;
+            fDigests = digests;
+            fTimeNanos = timeNanos;
+        }
+
+        public long getBlocks() {
+            return fBlocks;
+        }
+
+        public long getDigests() {
+            return fDigests;
+        }
+
+        /**
+         * @return the total length of messages of finished digests
+         */
+        public long getFinishedBytes() {
+            return fFinishedBytes;
+        }
+
+        /**
+         * @return the number of bytes in compressed blocks
+         */
+        public long getHashedBytes() {
+            return fBlocks * 64;
+        }
+
+        /**
+         * Returns the throughput of the compression function in bytes per
+         * second or 0 if it was not measured yet.
+         * 
+         * @return the compression throughput in bytes per second
+         */
+        public double getThroughput() {
+            return fTimeNanos > 0 ? fBlocks * 64 * 1e9 / fTimeNanos : 0;
+        }
+
+        public long getTimeNanos() {
+            return fTimeNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "blocks="
+                + fBlocks
+                + ", finishedBytes="
+                + fFinishedBytes
+                + ", digests="
+                + fDigests
+                + ", timeNanos="
+                + fTimeNanos;
+        }
+
+    }
+
+    /**
+     * <code>true</code> if metrics are collected
+     */
+    public static final boolean ENABLED = Boolean
+        .getBoolean("org.ubimix.commons.digests.metrics");
+
+    private static final Sha1Metrics INSTANCE = new Sha1Metrics();
+
+    private final static Logger log = Logger.getLogger(Sha1Metrics.class
+        .getName());
+
+    /**
+     * This value is returned by the {@link #beginBlock()} method for blocks
+     * which are not timed.
+     */
+    private static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    /**
+     * The name of the JMX bean
+     */
+    public static final String OBJECT_NAME = "org.ubimix.commons.digests:type=Sha1Metrics";
+
+    /**
+     * One block out of this number is timed.
+     */
+    public static final int SAMPLE_RATE = 16;
+
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    INSTANCE,
+                    new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                log.log(Level.WARNING, "Can not register SHA1 metrics", e);
+            }
+        }
+    }
+
+    /**
+     * Should be called before the compression of a block.
+     * 
+     * @return a value which should be passed to the {@link #endBlock(long)}
+     *         method
+     */
+    static long beginBlock() {
+        return ThreadLocalRandom.current().nextInt(SAMPLE_RATE) == 0
+            ? System.nanoTime()
+            : NOT_SAMPLED;
+    }
+
+    /**
+     * Should be called after the compression of a block.
+     * 
+     * @param start the value returned by the {@link #beginBlock()} method
+     */
+    static void endBlock(long start) {
+        INSTANCE.recordBlocks(1, start != NOT_SAMPLED
+            ? (System.nanoTime() - start) * SAMPLE_RATE
+            : 0);
+    }
+
+    /**
+     * @return the object collecting metrics
+     */
+    public static Sha1Metrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns a snapshot of the current metric values. All values are 0 when
+     * metrics are disabled.
+     * 
+     * @return a snapshot of metric values
+     */
+    public static Snapshot getSnapshot() {
+        return INSTANCE.snapshot();
+    }
+
+    /**
+     * Should be called when a digest of a message is finished.
+     * 
+     * @param length the length of the message in bytes
+     */
+    static void onDigest(long length) {
+        INSTANCE.recordDigest(length);
+    }
+
+    private final LongAdder fBlocks = new LongAdder();
+
+    private final LongAdder fDigests = new LongAdder();
+
+    private final LongAdder fFinishedBytes = new LongAdder();
+
+    private final LongAdder fTimeNanos = new LongAdder();
+
+    Sha1Metrics() {
+    }
+
+    public long getBlocks() {
+        return fBlocks.sum();
+    }
+
+    public long getDigests() {
+        return fDigests.sum();
+    }
+
+    public long getFinishedBytes() {
+        return fFinishedBytes.sum();
+    }
+
+    public long getHashedBytes() {
+        return getBlocks() * 64;
+    }
+
+    public long getTimeNanos() {
+        return fTimeNanos.sum();
+    }
+
+    void recordBlocks(int blocks, long timeNanos) {
+        fBlocks.add(blocks);
+        if (timeNanos != 0) {
+            fTimeNanos.add(timeNanos);
+        }
+    }
+
+    void recordDigest(long length) {
+        fDigests.increment();
+        fFinishedBytes.add(length);
+    }
+
+    public void reset() {
+        fBlocks.reset();
+        fDigests.reset();
+        fFinishedBytes.reset();
+        fTimeNanos.reset();
+    }
+
+    /**
+     * @return a snapshot of the current values of this object
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(
+            getBlocks(),
+            getFinishedBytes(),
+            getDigests(),
+            getTimeNanos());
+    }
+
+}
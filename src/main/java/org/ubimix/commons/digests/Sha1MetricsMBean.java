@@ -0,0 +1,59 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ * 
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.digests;
+
+/**
+ * The JMX interface of the {@link Sha1Metrics} class.
+ * 
+ * @author kotelnikov
+ */
+public interface Sha1MetricsMBean {
+
+    /**
+     * @return the number of compressed 64-byte blocks
+     */
+    long getBlocks();
+
+    /**
+     * @return the number of finished digests
+     */
+    long getDigests();
+
+    /**
+     * @return the total length of messages of finished digests in bytes;
+     *         bytes of unfinished, reset or abandoned hashers are not counted
+     */
+    long getFinishedBytes();
+
+    /**
+     * @return the number of bytes in compressed blocks, including blocks of
+     *         unfinished hashers
+     */
+    long getHashedBytes();
+
+    /**
+     * @return the estimated time spent in the compression function in
+     *         nanoseconds
+     */
+    long getTimeNanos();
+
+    /**
+     * Resets all counters.
+     */
+    void reset();
+
+}
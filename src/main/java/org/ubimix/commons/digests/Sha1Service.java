@@ -0,0 +1,577 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ * 
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.digests;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An asynchronous hashing service. Each submitted stream, channel or
+ * sequence of buffers is hashed by a separate job and the digest is returned
+ * as a {@link CompletableFuture}. On JVMs supporting virtual threads each job
+ * runs in its own virtual thread, so jobs blocked on slow inputs do not hold
+ * platform threads; on older JVMs jobs run in a pool of platform threads.
+ * <p>
+ * The service limits the number of jobs running at the same time and the
+ * total size of read buffers: a job waits for a free slot before it starts
+ * and for its buffer before it reads the input, so many slow clients can not
+ * exhaust the memory. The number of jobs waiting in the queue is limited as
+ * well: when the queue is full new jobs fail immediately with a
+ * {@link RejectedExecutionException} and their inputs are left open, so
+ * callers can answer with an error instead of accumulating pending clients.
+ * Read buffers are re-used between jobs. The
+ * {@link #getStats()} method returns the number of queued and active jobs
+ * and latency statistics. This class is not available in GWT clients.
+ * </p>
+ * 
+ * <pre>
+ * Sha1Service service = Sha1Service.builder().maxJobs(1000).build();
+ * service.submit(request.getInputStream()).thenAccept(digest -&gt; ...);
+ * </pre>
+ * 
+ * @author kotelnikov
+ */
+public class Sha1Service implements Closeable {
+
+    public static class Builder {
+
+        private int fBufferSize = 64 * 1024;
+
+        private ExecutorService fExecutor;
+
+        private int fMaxBufferedBytes = 64 * 1024 * 1024;
+
+        private int fMaxJobs = 256;
+
+        private int fMaxQueued = 4096;
+
+        public Sha1Service build() {
+            boolean shared = fExecutor != null;
+            ExecutorService executor = shared
+                ? fExecutor
+                : newDefaultExecutor(fMaxJobs);
+            int bufferSize = Math.min(fBufferSize, fMaxBufferedBytes);
+            return new Sha1Service(
+                executor,
+                !shared,
+                fMaxJobs,
+                fMaxQueued,
+                fMaxBufferedBytes,
+                bufferSize);
+        }
+
+        /**
+         * Sets the size of buffers used to read streams and channels (64 KB
+         * by default).
+         */
+        public Builder bufferSize(int bufferSize) {
+            fBufferSize = checkPositive(bufferSize, "Buffer size");
+            return this;
+        }
+
+        /**
+         * Sets the executor running jobs. By default the service uses a
+         * virtual thread per job if the JVM supports them and a pool of
+         * {@link #maxJobs(int)} daemon threads otherwise. An executor given
+         * by this method is not shut down when the service is closed.
+         */
+        public Builder executor(ExecutorService executor) {
+            fExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Sets the maximal total size of read buffers (64 MB by default).
+         */
+        public Builder maxBufferedBytes(int maxBufferedBytes) {
+            fMaxBufferedBytes = checkPositive(
+                maxBufferedBytes,
+                "Buffered bytes limit");
+            return this;
+        }
+
+        /**
+         * Sets the maximal number of jobs running at the same time (256 by
+         * default). Other jobs wait in the queue.
+         */
+        public Builder maxJobs(int maxJobs) {
+            fMaxJobs = checkPositive(maxJobs, "Job limit");
+            return this;
+        }
+
+        /**
+         * Sets the maximal number of jobs waiting for a free slot (4096 by
+         * default). Jobs submitted when the queue is full are rejected.
+         */
+        public Builder maxQueued(int maxQueued) {
+            fMaxQueued = checkPositive(maxQueued, "Queue limit");
+            return this;
+        }
+
+    }
+
+    /**
+     * The body of a job; it is called with a read buffer if the job requires
+     * it.
+     */
+    private interface IJob {
+
+        void run(SHA1 digest, byte[] buf) throws IOException;
+    }
+
+    /**
+     * Statistics of the service.
+     * 
+     * @author kotelnikov
+     */
+    public static class Stats {
+
+        private final int fActive;
+
+        private final long fBufferedBytes;
+
+        private final long fCompleted;
+
+        private final long fFailed;
+
+        private final long fMaxLatencyNanos;
+
+        private final int fQueued;
+
+        private final long fRejected;
+
+        private final long fTotalLatencyNanos;
+
+        private final long fTotalWaitNanos;
+
+        public Stats(
+            int queued,
+            int active,
+            long bufferedBytes,
+            long completed,
+            long failed,
+            long rejected,
+            long totalWaitNanos,
+            long totalLatencyNanos,
+            long maxLatencyNanos) {
+            fQueued = queued;
+            fActive = active;
+            fBufferedBytes = bufferedBytes;
+            fCompleted = completed;
+            fFailed = failed;
+            fRejected = rejected;
+            fTotalWaitNanos = totalWaitNanos;
+            fTotalLatencyNanos = totalLatencyNanos;
+            fMaxLatencyNanos = maxLatencyNanos;
+        }
+
+        /**
+         * @return the number of running jobs
+         */
+        public int getActive() {
+            return fActive;
+        }
+
+        /**
+         * @return the average time between the submission and the completion
+         *         of finished jobs
+         */
+        public long getAverageLatencyNanos() {
+            long count = fCompleted + fFailed;
+            return count > 0 ? fTotalLatencyNanos / count : 0;
+        }
+
+        /**
+         * @return the average time finished jobs spent in the queue
+         */
+        public long getAverageWaitNanos() {
+            long count = fCompleted + fFailed;
+            return count > 0 ? fTotalWaitNanos / count : 0;
+        }
+
+        /**
+         * @return the size of read buffers currently used by jobs
+         */
+        public long getBufferedBytes() {
+            return fBufferedBytes;
+        }
+
+        /**
+         * @return the number of successfully finished jobs
+         */
+        public long getCompleted() {
+            return fCompleted;
+        }
+
+        /**
+         * @return the number of failed jobs; rejected jobs are not counted
+         */
+        public long getFailed() {
+            return fFailed;
+        }
+
+        /**
+         * @return the maximal time between the submission and the completion
+         *         of a job
+         */
+        public long getMaxLatencyNanos() {
+            return fMaxLatencyNanos;
+        }
+
+        /**
+         * @return the number of jobs waiting for a free slot
+         */
+        public int getQueued() {
+            return fQueued;
+        }
+
+        /**
+         * @return the number of jobs rejected because the queue was full or
+         *         the executor did not accept them; they are not included in
+         *         average latencies
+         */
+        public long getRejected() {
+            return fRejected;
+        }
+
+        @Override
+        public String toString() {
+            return "queued="
+                + fQueued
+                + ", active="
+                + fActive
+                + ", bufferedBytes="
+                + fBufferedBytes
+                + ", completed="
+                + fCompleted
+                + ", failed="
+                + fFailed
+                + ", rejected="
+                + fRejected
+                + ", averageLatencyNanos="
+                + getAverageLatencyNanos();
+        }
+
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private static int checkPositive(int value, String name) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name
+                + " should be positive: "
+                + value);
+        }
+        return value;
+    }
+
+    /**
+     * Returns an executor starting a new virtual thread for each task. If
+     * virtual threads are not supported then a pool of the given number of
+     * daemon threads is returned.
+     */
+    private static ExecutorService newDefaultExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod(
+                "newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            // Virtual threads are not supported (Java 20 and older)
+        }
+        final AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "sha1-service-"
+                    + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private final AtomicInteger fActive = new AtomicInteger();
+
+    private final int fBufferSize;
+
+    private final Semaphore fBufferPermits;
+
+    /**
+     * Free read buffers; the number of buffers is limited by the buffer
+     * permits.
+     */
+    private final Queue<byte[]> fBuffers;
+
+    private final LongAdder fCompleted = new LongAdder();
+
+    private final ExecutorService fExecutor;
+
+    private final LongAdder fFailed = new LongAdder();
+
+    private final Semaphore fJobPermits;
+
+    private final int fMaxBufferedBytes;
+
+    private final AtomicLong fMaxLatency = new AtomicLong();
+
+    private final boolean fOwnExecutor;
+
+    private final AtomicInteger fQueued = new AtomicInteger();
+
+    private final LongAdder fRejected = new LongAdder();
+
+    /**
+     * Free places in the queue; a permit is taken when a job is submitted and
+     * returned when it starts or fails before starting.
+     */
+    private final Semaphore fQueuePermits;
+
+    private final LongAdder fTotalLatency = new LongAdder();
+
+    private final LongAdder fTotalWait = new LongAdder();
+
+    private Sha1Service(
+        ExecutorService executor,
+        boolean ownExecutor,
+        int maxJobs,
+        int maxQueued,
+        int maxBufferedBytes,
+        int bufferSize) {
+        fExecutor = executor;
+        fOwnExecutor = ownExecutor;
+        fJobPermits = new Semaphore(maxJobs, true);
+        fQueuePermits = new Semaphore(maxQueued);
+        fMaxBufferedBytes = maxBufferedBytes;
+        fBufferPermits = new Semaphore(maxBufferedBytes, true);
+        fBufferSize = bufferSize;
+        fBuffers = new ConcurrentLinkedQueue<byte[]>();
+    }
+
+    /**
+     * Shuts down the executor if it was created by this service. Submitted
+     * jobs are finished.
+     */
+    public void close() {
+        if (fOwnExecutor) {
+            fExecutor.shutdown();
+        }
+    }
+
+    private void finishJob(long submitted) {
+        long latency = System.nanoTime() - submitted;
+        fTotalLatency.add(latency);
+        long max;
+        while ((max = fMaxLatency.get()) < latency
+            && !fMaxLatency.compareAndSet(max, latency)) {
+        }
+    }
+
+    /**
+     * @return a snapshot of the statistics of this service
+     */
+    public Stats getStats() {
+        return new Stats(
+            fQueued.get(),
+            fActive.get(),
+            fMaxBufferedBytes - fBufferPermits.availablePermits(),
+            fCompleted.sum(),
+            fFailed.sum(),
+            fRejected.sum(),
+            fTotalWait.sum(),
+            fTotalLatency.sum(),
+            fMaxLatency.get());
+    }
+
+    /**
+     * Runs the given job and returns the calculated digest.
+     */
+    private Sha1Digest runJob(IJob job, boolean buffered) throws Exception {
+        SHA1 digest = new SHA1();
+        if (!buffered) {
+            job.run(digest, null);
+        } else {
+            fBufferPermits.acquire(fBufferSize);
+            byte[] buf = fBuffers.poll();
+            try {
+                if (buf == null) {
+                    buf = new byte[fBufferSize];
+                }
+                job.run(digest, buf);
+            } finally {
+                if (buf != null) {
+                    fBuffers.offer(buf);
+                }
+                fBufferPermits.release(fBufferSize);
+            }
+        }
+        return Sha1Digest.finish(digest);
+    }
+
+    private CompletableFuture<Sha1Digest> submit(
+        final IJob job,
+        final boolean buffered) {
+        final CompletableFuture<Sha1Digest> result;
+        result = new CompletableFuture<Sha1Digest>();
+        final long submitted = System.nanoTime();
+        if (!fQueuePermits.tryAcquire()) {
+            fRejected.increment();
+            result.completeExceptionally(new RejectedExecutionException(
+                "Too many queued jobs"));
+            return result;
+        }
+        fQueued.incrementAndGet();
+        Runnable task = new Runnable() {
+            public void run() {
+                boolean started = false;
+                Sha1Digest digest = null;
+                Throwable error = null;
+                try {
+                    fJobPermits.acquire();
+                    started = true;
+                    // A job is always either queued or active
+                    fActive.incrementAndGet();
+                    fQueued.decrementAndGet();
+                    fQueuePermits.release();
+                    fTotalWait.add(System.nanoTime() - submitted);
+                    digest = runJob(job, buffered);
+                } catch (Throwable e) {
+                    error = e;
+                }
+                // Counters are updated before the future is completed
+                if (started) {
+                    fActive.decrementAndGet();
+                    fJobPermits.release();
+                } else {
+                    fQueued.decrementAndGet();
+                    fQueuePermits.release();
+                    fTotalWait.add(System.nanoTime() - submitted);
+                }
+                finishJob(submitted);
+                if (error == null) {
+                    fCompleted.increment();
+                    result.complete(digest);
+                } else {
+                    fFailed.increment();
+                    result.completeExceptionally(error);
+                }
+            }
+        };
+        try {
+            fExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            fQueued.decrementAndGet();
+            fQueuePermits.release();
+            fRejected.increment();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Hashes the remaining bytes of the given buffers. Buffers are not
+     * modified: their duplicates are read.
+     * 
+     * @param buffers the buffers to hash
+     * @return the future digest of the bytes of all buffers
+     */
+    public CompletableFuture<Sha1Digest> submit(
+        final Iterable<ByteBuffer> buffers) {
+        return submit(new IJob() {
+            public void run(SHA1 digest, byte[] buf) {
+                for (ByteBuffer buffer : buffers) {
+                    DigestBuffers.update(digest, buffer.duplicate());
+                }
+            }
+        }, false);
+    }
+
+    /**
+     * Hashes the content of the given stream. The stream is closed at the
+     * end.
+     * 
+     * @param input the stream to hash
+     * @return the future digest of the stream content
+     */
+    public CompletableFuture<Sha1Digest> submit(final InputStream input) {
+        return submit(new IJob() {
+            public void run(SHA1 digest, byte[] buf) throws IOException {
+                try {
+                    int len;
+                    while ((len = input.read(buf)) >= 0) {
+                        digest.update(buf, 0, len);
+                    }
+                } finally {
+                    input.close();
+                }
+            }
+        }, true);
+    }
+
+    /**
+     * Hashes the remaining content of the given channel. The channel is
+     * closed at the end. Non-blocking channels are not supported: a job would
+     * spin on empty reads instead of waiting for data.
+     * 
+     * @param channel the channel to hash
+     * @return the future digest of the channel content
+     * @throws IllegalArgumentException if the channel is in non-blocking mode
+     */
+    public CompletableFuture<Sha1Digest> submit(
+        final ReadableByteChannel channel) {
+        if (channel instanceof SelectableChannel
+            && !((SelectableChannel) channel).isBlocking()) {
+            throw new IllegalArgumentException(
+                "Non-blocking channels are not supported");
+        }
+        return submit(new IJob() {
+            public void run(SHA1 digest, byte[] buf) throws IOException {
+                try {
+                    ByteBuffer buffer = ByteBuffer.wrap(buf);
+                    int len;
+                    while ((len = channel.read(buffer)) >= 0) {
+                        if (len == 0) {
+                            // The channel was switched to non-blocking mode
+                            LockSupport.parkNanos(1000000);
+                            continue;
+                        }
+                        digest.update(buf, 0, len);
+                        buffer.clear();
+                    }
+                } finally {
+                    channel.close();
+                }
+            }
+        }, true);
+    }
+
+}
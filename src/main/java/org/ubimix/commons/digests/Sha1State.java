@@ -0,0 +1,159 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ * 
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.digests;
+
+/**
+ * This is an immutable snapshot of an intermediate state of a {@link SHA1}
+ * digest. It contains only the five chaining words, the bytes of the
+ * current incomplete block and the number of hashed bytes. Snapshots are
+ * cheap to create and to fork: any number of digests can be restored from
+ * the same snapshot (see {@link SHA1#SHA1(Sha1State)}). Snapshots can be
+ * serialized to bytes (see {@link #toBytes()}) and loaded later (see
+ * {@link #fromBytes(byte[])}), so hashing of long messages can be resumed
+ * without re-reading already hashed data.
+ * 
+ * @author kotelnikov
+ */
+public final class Sha1State {
+
+    /**
+     * The version of the serialized form.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Loads a snapshot from its serialized form.
+     * 
+     * @param array the serialized snapshot
+     * @return the loaded snapshot
+     * @throws IllegalArgumentException if the given array does not contain a
+     *         valid serialized snapshot
+     * @see #toBytes()
+     */
+    public static Sha1State fromBytes(byte[] array) {
+        if (array.length < 29 || (array[0] & 0xFF) != VERSION) {
+            throw new IllegalArgumentException("Bad SHA1 state");
+        }
+        long length = 0;
+        for (int i = 1; i < 9; i++) {
+            length = (length << 8) | (array[i] & 0xFF);
+        }
+        int len = (int) (length & 63);
+        if (length < 0 || array.length != 29 + len) {
+            throw new IllegalArgumentException("Bad SHA1 state");
+        }
+        int[] state = new int[5];
+        for (int i = 0; i < state.length; i++) {
+            state[i] = getInt(array, 9 + i * 4, 4);
+        }
+        int[] block = new int[(len + 3) / 4];
+        for (int i = 0; i < block.length; i++) {
+            int pos = 29 + i * 4;
+            block[i] = getInt(array, pos, Math.min(4, array.length - pos));
+        }
+        return new Sha1State(state, block, length);
+    }
+
+    /**
+     * Reads an integer from the given number of bytes; missing low-order
+     * bytes are replaced by zeros.
+     */
+    private static int getInt(byte[] array, int pos, int len) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value <<= 8;
+            if (i < len) {
+                value |= array[pos + i] & 0xFF;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * The words of the current incomplete block; the last word can be
+     * incomplete.
+     */
+    private final int[] fBlock;
+
+    private final long fLength;
+
+    private final int[] fState;
+
+    Sha1State(int[] state, int[] block, long length) {
+        fState = state;
+        fBlock = block;
+        fLength = length;
+    }
+
+    int[] getBlock() {
+        return fBlock;
+    }
+
+    /**
+     * Returns the digest of all bytes hashed before this snapshot was taken.
+     * 
+     * @return the digest of the message hashed so far
+     */
+    public Sha1Digest getDigest() {
+        return Sha1Digest.finish(new SHA1(this));
+    }
+
+    /**
+     * Returns the number of hashed bytes.
+     * 
+     * @return the number of hashed bytes
+     */
+    public long getLength() {
+        return fLength;
+    }
+
+    int[] getState() {
+        return fState;
+    }
+
+    /**
+     * Serializes this snapshot. The serialized form contains one version
+     * byte, the 8 bytes of the length, the 20 bytes of the chaining state and
+     * the bytes of the current incomplete block (up to 63 bytes).
+     * 
+     * @return the serialized snapshot
+     * @see #fromBytes(byte[])
+     */
+    public byte[] toBytes() {
+        int len = (int) (fLength & 63);
+        byte[] array = new byte[29 + len];
+        array[0] = VERSION;
+        for (int i = 0; i < 8; i++) {
+            array[1 + i] = (byte) (fLength >>> (56 - 8 * i));
+        }
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < 4; j++) {
+                array[9 + i * 4 + j] = (byte) (fState[i] >>> (24 - 8 * j));
+            }
+        }
+        for (int i = 0; i < len; i++) {
+            array[29 + i] = (byte) (fBlock[i / 4] >>> (24 - 8 * (i % 4)));
+        }
+        return array;
+    }
+
+    @Override
+    public String toString() {
+        return SHA1.getDigestAsString(fState) + ":" + fLength;
+    }
+
+}
@@ -0,0 +1,304 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ * 
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.digests;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * This class calculates Merkle tree digests of files. A file is split in
+ * chunks of a fixed size; chunks are hashed in parallel (directly from
+ * memory-mapped windows when it is possible) and their digests are combined
+ * in a binary tree. Leaf digests are calculated as SHA1(0x00 | chunk) and
+ * inner nodes as SHA1(0x01 | left | right); an odd node of a level is
+ * promoted to the next level as is. The prefixes make leaves and inner nodes
+ * distinct, so a tree of one shape can not be passed for a tree of another
+ * shape.
+ * <p>
+ * The result gives access to the digests of all chunks, so modified chunks
+ * can be found later by comparing them without re-hashing the whole file
+ * (see {@link #getRoot(List)}). This class is not available in GWT clients.
+ * </p>
+ * 
+ * @author kotelnikov
+ */
+public class Sha1TreeHash {
+
+    public static class Builder {
+
+        private int fChunkSize = DEFAULT_CHUNK_SIZE;
+
+        private Executor fExecutor;
+
+        private int fParallelism = Runtime.getRuntime().availableProcessors();
+
+        public Sha1TreeHash build() {
+            Sha1Batch batch = Sha1Batch
+                .builder()
+                .executor(fExecutor)
+                .parallelism(fParallelism)
+                .build();
+            return new Sha1TreeHash(batch, fChunkSize);
+        }
+
+        /**
+         * Sets the size of chunks (4 MB by default).
+         */
+        public Builder chunkSize(int chunkSize) {
+            if (chunkSize < 1) {
+                throw new IllegalArgumentException(
+                    "Chunk size should be positive: " + chunkSize);
+            }
+            fChunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * Sets the executor hashing chunks. By default the executor shared
+         * with {@link Sha1Batch}es is used.
+         */
+        public Builder executor(Executor executor) {
+            fExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Sets the maximal number of chunks hashed at the same time. By
+         * default it is the number of available processors.
+         */
+        public Builder parallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException(
+                    "Parallelism should be positive: " + parallelism);
+            }
+            fParallelism = parallelism;
+            return this;
+        }
+
+    }
+
+    /**
+     * A chunk of a file hashed as a leaf of the tree.
+     */
+    private static class Chunk implements Sha1Batch.IInput {
+
+        private final FileChannel fChannel;
+
+        private final long fLength;
+
+        private final long fPosition;
+
+        public Chunk(FileChannel channel, long position, long length) {
+            fChannel = channel;
+            fPosition = position;
+            fLength = length;
+        }
+
+        public void update(SHA1 digest) throws IOException {
+            digest.update(0x00);
+            Sha1Files.update(digest, fChannel, fPosition, fLength);
+        }
+
+    }
+
+    /**
+     * The tree digest of a file.
+     * 
+     * @author kotelnikov
+     */
+    public static class Result {
+
+        private List<Sha1Digest> fChunkDigests;
+
+        private int fChunkSize;
+
+        private long fLength;
+
+        private Sha1Digest fRoot;
+
+        public Result(
+            Sha1Digest root,
+            List<Sha1Digest> chunkDigests,
+            int chunkSize,
+            long length) {
+            fRoot = root;
+            fChunkDigests = chunkDigests;
+            fChunkSize = chunkSize;
+            fLength = length;
+        }
+
+        /**
+         * Returns an unmodifiable list of leaf digests; the digest with the
+         * index <code>i</code> corresponds to the bytes starting at the
+         * position <code>i * chunkSize</code>.
+         * 
+         * @return the digests of all chunks of the file
+         */
+        public List<Sha1Digest> getChunkDigests() {
+            return fChunkDigests;
+        }
+
+        public int getChunkSize() {
+            return fChunkSize;
+        }
+
+        /**
+         * @return the length of the hashed file
+         */
+        public long getLength() {
+            return fLength;
+        }
+
+        /**
+         * @return the root digest of the tree
+         */
+        public Sha1Digest getRoot() {
+            return fRoot;
+        }
+
+        @Override
+        public String toString() {
+            return fRoot + " (" + fChunkDigests.size() + " chunks)";
+        }
+
+    }
+
+    private static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Combines the given leaf digests in the root digest of the tree.
+     * 
+     * @param chunkDigests the digests of all chunks
+     * @return the root digest of the tree
+     */
+    public static Sha1Digest getRoot(List<Sha1Digest> chunkDigests) {
+        if (chunkDigests.isEmpty()) {
+            throw new IllegalArgumentException("No chunk digests");
+        }
+        SHA1 digest = new SHA1();
+        byte[] buf = new byte[20];
+        List<Sha1Digest> level = chunkDigests;
+        while (level.size() > 1) {
+            List<Sha1Digest> next = new ArrayList<Sha1Digest>(
+                (level.size() + 1) / 2);
+            for (int i = 0; i < level.size(); i += 2) {
+                if (i + 1 == level.size()) {
+                    next.add(level.get(i));
+                } else {
+                    digest.update(0x01);
+                    level.get(i).getBytes(buf, 0);
+                    digest.update(buf);
+                    level.get(i + 1).getBytes(buf, 0);
+                    digest.update(buf);
+                    next.add(Sha1Digest.finish(digest));
+                }
+            }
+            level = next;
+        }
+        return level.get(0);
+    }
+
+    /**
+     * This batch hashes chunks in parallel.
+     */
+    private final Sha1Batch fBatch;
+
+    private final int fChunkSize;
+
+    private Sha1TreeHash(Sha1Batch batch, int chunkSize) {
+        fBatch = batch;
+        fChunkSize = chunkSize;
+    }
+
+    /**
+     * Calculates the tree digest of the content of the given channel. The
+     * position of the channel is not changed.
+     * 
+     * @param channel the channel to hash
+     * @return the tree digest of the channel content
+     * @throws IOException if the channel can not be read
+     */
+    public Result digest(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long count = Math.max(1, (size + fChunkSize - 1) / fChunkSize);
+        if (count > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many chunks ("
+                + count
+                + ") of "
+                + fChunkSize
+                + " bytes in a file of "
+                + size
+                + " bytes; the chunk size should be increased");
+        }
+        List<Chunk> chunks = new ArrayList<Chunk>((int) count);
+        for (int i = 0; i < count; i++) {
+            long position = (long) i * fChunkSize;
+            long length = Math.min(fChunkSize, size - position);
+            chunks.add(new Chunk(channel, position, length));
+        }
+        List<Sha1Digest> list = Collections.unmodifiableList(fBatch
+            .digest(chunks));
+        return new Result(getRoot(list), list, fChunkSize, size);
+    }
+
+    /**
+     * Calculates the tree digest of the specified file.
+     * 
+     * @param file the file to hash
+     * @return the tree digest of the file
+     * @throws IOException if the file can not be read
+     */
+    public Result digest(File file) throws IOException {
+        return digest(file.toPath());
+    }
+
+    /**
+     * Calculates the tree digest of the specified file.
+     * 
+     * @param path the path to the file to hash
+     * @return the tree digest of the file
+     * @throws IOException if the file can not be read
+     */
+    public Result digest(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return digest(channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    public int getChunkSize() {
+        return fChunkSize;
+    }
+
+    public int getParallelism() {
+        return fBatch.getParallelism();
+    }
+
+}
@@ -0,0 +1,175 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ * 
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.digests;
+
+/**
+ * This class encodes characters in UTF-8 and sends the resulting bytes to the
+ * {@link #updateByte(int)} method. Surrogate pairs are encoded as one code
+ * point (four bytes), unpaired surrogate characters are replaced by the '?'
+ * symbol. Runs of ASCII characters are sent four at a time to the
+ * {@link #updateWord(int)} method when the receiver is aligned on a word
+ * boundary (see {@link #isWordAligned()}). This class is used by all hashers
+ * accepting characters, so they give the same results for the same text.
+ * 
+ * @author kotelnikov
+ */
+abstract class Utf8Encoder {
+
+    /**
+     * Adds the UTF-8 representation of the specified characters.
+     * 
+     * @param array the array containing characters to encode
+     * @param offset the position of the first character to encode
+     * @param len the number of characters to encode
+     */
+    public void encode(char[] array, int offset, int len) {
+        if (offset < 0 || len < 0 || offset > array.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        int pos = offset;
+        int end = offset + len;
+        while (pos < end) {
+            if (isWordAligned()) {
+                // Pack runs of ASCII characters in whole words
+                while (end - pos >= 4) {
+                    int c0 = array[pos];
+                    int c1 = array[pos + 1];
+                    int c2 = array[pos + 2];
+                    int c3 = array[pos + 3];
+                    if ((c0 | c1 | c2 | c3) >= 0x80) {
+                        break;
+                    }
+                    updateWord((c0 << 24) | (c1 << 16) | (c2 << 8) | c3);
+                    pos += 4;
+                }
+                if (pos == end) {
+                    break;
+                }
+            }
+            int c = array[pos++];
+            int next = pos < end ? array[pos] : 0;
+            if (encode(c, next)) {
+                pos++;
+            }
+        }
+    }
+
+    /**
+     * Adds the UTF-8 representation of the specified subsequence of
+     * characters.
+     * 
+     * @param msg the sequence containing characters to encode
+     * @param start the index of the first character to encode
+     * @param end the index after the last character to encode
+     */
+    public void encode(CharSequence msg, int start, int end) {
+        if (start < 0 || start > end || end > msg.length()) {
+            throw new IndexOutOfBoundsException();
+        }
+        int pos = start;
+        while (pos < end) {
+            if (isWordAligned()) {
+                // Pack runs of ASCII characters in whole words
+                while (end - pos >= 4) {
+                    int c0 = msg.charAt(pos);
+                    int c1 = msg.charAt(pos + 1);
+                    int c2 = msg.charAt(pos + 2);
+                    int c3 = msg.charAt(pos + 3);
+                    if ((c0 | c1 | c2 | c3) >= 0x80) {
+                        break;
+                    }
+                    updateWord((c0 << 24) | (c1 << 16) | (c2 << 8) | c3);
+                    pos += 4;
+                }
+                if (pos == end) {
+                    break;
+                }
+            }
+            int c = msg.charAt(pos++);
+            int next = pos < end ? msg.charAt(pos) : 0;
+            if (encode(c, next)) {
+                pos++;
+            }
+        }
+    }
+
+    /**
+     * Adds the UTF-8 representation of the given character. If this
+     * character is a high surrogate and the next character is the
+     * corresponding low surrogate then both of them are encoded as one code
+     * point.
+     * 
+     * @param c the character to encode
+     * @param next the character following the encoded one or a negative value
+     *        if there is no more characters
+     * @return <code>true</code> if the next character was consumed as well
+     */
+    public boolean encode(int c, int next) {
+        boolean pair = false;
+        if (c < 0x80) {
+            updateByte(c);
+        } else if (c < 0x800) {
+            updateByte((c >>> 6) | 0xC0);
+            updateByte((c & 0x3F) | 0x80);
+        } else if (c < 0xD800 || c > 0xDFFF) {
+            updateByte((c >>> 12) | 0xE0);
+            updateByte(((c >>> 6) & 0x3F) | 0x80);
+            updateByte((c & 0x3F) | 0x80);
+        } else if (c <= 0xDBFF && next >= 0xDC00 && next <= 0xDFFF) {
+            int code = ((c - 0xD800) << 10) + (next - 0xDC00) + 0x10000;
+            updateByte((code >>> 18) | 0xF0);
+            updateByte(((code >>> 12) & 0x3F) | 0x80);
+            updateByte(((code >>> 6) & 0x3F) | 0x80);
+            updateByte((code & 0x3F) | 0x80);
+            pair = true;
+        } else {
+            updateByte('?');
+        }
+        return pair;
+    }
+
+    /**
+     * Returns <code>true</code> if the next four ASCII characters can be sent
+     * as one word to the {@link #updateWord(int)} method. By default this
+     * method returns <code>false</code>.
+     */
+    protected boolean isWordAligned() {
+        return false;
+    }
+
+    /**
+     * Receives the next encoded byte.
+     * 
+     * @param value the byte to add
+     */
+    protected abstract void updateByte(int value);
+
+    /**
+     * Receives four ASCII characters packed in a big-endian word. This method
+     * is called only when {@link #isWordAligned()} returns <code>true</code>.
+     * By default the word is sent byte by byte to {@link #updateByte(int)}.
+     * 
+     * @param word the four bytes to add
+     */
+    protected void updateWord(int word) {
+        updateByte(word >>> 24);
+        updateByte((word >>> 16) & 0xFF);
+        updateByte((word >>> 8) & 0xFF);
+        updateByte(word & 0xFF);
+    }
+
+}
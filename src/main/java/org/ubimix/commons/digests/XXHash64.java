@@ -0,0 +1,393 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ * 
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.digests;
+
+import org.ubimix.commons.digests.SHA1.IBlockByteProvider;
+import org.ubimix.commons.digests.SHA1.IByteProvider;
+
+/**
+ * This class calculates the 64-bit xxHash (XXH64) of byte sequences. It is a
+ * fast non-cryptographic hash which should be used instead of {@link SHA1}
+ * where the hash is used only as a cache key or to distribute values between
+ * shards. This class accepts the same inputs as the {@link SHA1} class:
+ * {@link IByteProvider}s, arrays of bytes and characters and strings (hashed
+ * as UTF-8 bytes, unpaired surrogates are replaced by the '?' symbol), so the
+ * hash of a string is the same as the hash of its UTF-8 representation. This
+ * class can be used on the server side as well as in GWT clients;
+ * {@link java.nio.ByteBuffer}s are hashed using
+ * {@link DigestBuffers#update(XXHash64, java.nio.ByteBuffer)}.
+ * 
+ * <pre>
+ * long key = XXHash64.hash(&quot;some text&quot;);
+ * long other = new XXHash64(seed).update(array, 0, len).getValue();
+ * </pre>
+ * 
+ * @author kotelnikov
+ */
+public class XXHash64 {
+
+    private static final int CHUNK_SIZE = 4 * 1024;
+
+    private static final long P1 = 0x9E3779B185EBCA87L;
+
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+
+    private static final long P3 = 0x165667B19E3779F9L;
+
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    private static int getInt(byte[] array, int pos) {
+        return (array[pos] & 0xFF)
+            | ((array[pos + 1] & 0xFF) << 8)
+            | ((array[pos + 2] & 0xFF) << 16)
+            | (array[pos + 3] << 24);
+    }
+
+    private static long getLong(byte[] array, int pos) {
+        return (getInt(array, pos) & 0xFFFFFFFFL)
+            | ((long) getInt(array, pos + 4) << 32);
+    }
+
+    /**
+     * Returns the hash of the given bytes with the seed 0.
+     * 
+     * @param array the bytes to hash
+     * @return the hash value
+     */
+    public static long hash(byte[] array) {
+        return new XXHash64().update(array).getValue();
+    }
+
+    /**
+     * Returns the hash of the UTF-8 representation of the given characters
+     * with the seed 0.
+     * 
+     * @param msg the characters to hash
+     * @return the hash value
+     */
+    public static long hash(CharSequence msg) {
+        return new XXHash64().update(msg).getValue();
+    }
+
+    private static long mergeRound(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * P1 + P4;
+    }
+
+    private static long rotateLeft(long value, int bits) {
+        return (value << bits) | (value >>> (64 - bits));
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * P2;
+        acc = rotateLeft(acc, 31);
+        return acc * P1;
+    }
+
+    /**
+     * This array contains bytes of the current incomplete 32-byte stripe.
+     */
+    private final byte[] fBuf = new byte[32];
+
+    private int fBufLen;
+
+    private byte[] fChunk;
+
+    /**
+     * This encoder is lazily created and used to add characters to this hash.
+     */
+    private Utf8Encoder fEncoder;
+
+    private long fLength;
+
+    private final long fSeed;
+
+    private long fV1;
+
+    private long fV2;
+
+    private long fV3;
+
+    private long fV4;
+
+    public XXHash64() {
+        this(0);
+    }
+
+    public XXHash64(long seed) {
+        fSeed = seed;
+        reset();
+    }
+
+    private void doUpdate(int value) {
+        fBuf[fBufLen++] = (byte) value;
+        fLength++;
+        if (fBufLen == 32) {
+            flushStripe();
+        }
+    }
+
+    private void flushStripe() {
+        processStripe(
+            getLong(fBuf, 0),
+            getLong(fBuf, 8),
+            getLong(fBuf, 16),
+            getLong(fBuf, 24));
+        fBufLen = 0;
+    }
+
+    private Utf8Encoder getEncoder() {
+        if (fEncoder == null) {
+            fEncoder = new Utf8Encoder() {
+                @Override
+                protected boolean isWordAligned() {
+                    return (fBufLen & 3) == 0;
+                }
+
+                @Override
+                protected void updateByte(int value) {
+                    doUpdate(value);
+                }
+
+                @Override
+                protected void updateWord(int word) {
+                    fBuf[fBufLen] = (byte) (word >>> 24);
+                    fBuf[fBufLen + 1] = (byte) (word >>> 16);
+                    fBuf[fBufLen + 2] = (byte) (word >>> 8);
+                    fBuf[fBufLen + 3] = (byte) word;
+                    fBufLen += 4;
+                    fLength += 4;
+                    if (fBufLen == 32) {
+                        flushStripe();
+                    }
+                }
+            };
+        }
+        return fEncoder;
+    }
+
+    /**
+     * Returns the number of bytes hashed since the last reset.
+     * 
+     * @return the number of hashed bytes
+     */
+    public long getLength() {
+        return fLength;
+    }
+
+    /**
+     * Returns the hash of all bytes added so far. This method does not change
+     * the state of this object, so new bytes can be added after this call.
+     * 
+     * @return the hash value
+     */
+    public long getValue() {
+        long h;
+        if (fLength >= 32) {
+            h = rotateLeft(fV1, 1)
+                + rotateLeft(fV2, 7)
+                + rotateLeft(fV3, 12)
+                + rotateLeft(fV4, 18);
+            h = mergeRound(h, fV1);
+            h = mergeRound(h, fV2);
+            h = mergeRound(h, fV3);
+            h = mergeRound(h, fV4);
+        } else {
+            h = fSeed + P5;
+        }
+        h += fLength;
+        int pos = 0;
+        for (; pos + 8 <= fBufLen; pos += 8) {
+            h ^= round(0, getLong(fBuf, pos));
+            h = rotateLeft(h, 27) * P1 + P4;
+        }
+        if (pos + 4 <= fBufLen) {
+            h ^= (getInt(fBuf, pos) & 0xFFFFFFFFL) * P1;
+            h = rotateLeft(h, 23) * P2 + P3;
+            pos += 4;
+        }
+        for (; pos < fBufLen; pos++) {
+            h ^= (fBuf[pos] & 0xFF) * P5;
+            h = rotateLeft(h, 11) * P1;
+        }
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    /**
+     * Returns <code>true</code> if there is no incomplete 32-byte stripe in
+     * the internal buffer.
+     */
+    boolean isStripeAligned() {
+        return fBufLen == 0;
+    }
+
+    private void processStripe(long w1, long w2, long w3, long w4) {
+        fV1 = round(fV1, w1);
+        fV2 = round(fV2, w2);
+        fV3 = round(fV3, w3);
+        fV4 = round(fV4, w4);
+    }
+
+    /**
+     * Resets this object to the initial state, so it can be used to hash a
+     * new sequence of bytes with the same seed.
+     */
+    public void reset() {
+        fV1 = fSeed + P1 + P2;
+        fV2 = fSeed + P2;
+        fV3 = fSeed;
+        fV4 = fSeed - P1;
+        fBufLen = 0;
+        fLength = 0;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toHexString(getValue());
+    }
+
+    public XXHash64 update(byte[] array) {
+        return update(array, 0, array.length);
+    }
+
+    /**
+     * Adds the specified region of the given array to this hash. Whole
+     * 32-byte stripes are read directly from the array.
+     * 
+     * @param array the array containing bytes to hash
+     * @param offset the position of the first byte to hash
+     * @param len the number of bytes to hash
+     * @return this object
+     */
+    public XXHash64 update(byte[] array, int offset, int len) {
+        if (offset < 0 || len < 0 || offset > array.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        int end = offset + len;
+        while (offset < end && fBufLen != 0) {
+            doUpdate(array[offset++]);
+        }
+        if (end - offset >= 32) {
+            long v1 = fV1;
+            long v2 = fV2;
+            long v3 = fV3;
+            long v4 = fV4;
+            int start = offset;
+            while (end - offset >= 32) {
+                v1 = round(v1, getLong(array, offset));
+                v2 = round(v2, getLong(array, offset + 8));
+                v3 = round(v3, getLong(array, offset + 16));
+                v4 = round(v4, getLong(array, offset + 24));
+                offset += 32;
+            }
+            fV1 = v1;
+            fV2 = v2;
+            fV3 = v3;
+            fV4 = v4;
+            fLength += offset - start;
+        }
+        while (offset < end) {
+            doUpdate(array[offset++]);
+        }
+        return this;
+    }
+
+    /**
+     * Adds the UTF-8 representation of the specified characters to this
+     * hash. Unpaired surrogate characters are replaced by the '?' symbol.
+     * 
+     * @param array the array containing characters to hash
+     * @param offset the position of the first character to hash
+     * @param len the number of characters to hash
+     * @return this object
+     */
+    public XXHash64 update(char[] array, int offset, int len) {
+        getEncoder().encode(array, offset, len);
+        return this;
+    }
+
+    public XXHash64 update(CharSequence msg) {
+        return update(msg, 0, msg.length());
+    }
+
+    /**
+     * Adds the UTF-8 representation of the specified subsequence of
+     * characters to this hash. Unpaired surrogate characters are replaced by
+     * the '?' symbol.
+     * 
+     * @param msg the sequence containing characters to hash
+     * @param start the index of the first character to hash
+     * @param end the index after the last character to hash
+     * @return this object
+     */
+    public XXHash64 update(CharSequence msg, int start, int end) {
+        getEncoder().encode(msg, start, end);
+        return this;
+    }
+
+    public XXHash64 update(IByteProvider iterator) {
+        if (iterator instanceof IBlockByteProvider) {
+            IBlockByteProvider provider = (IBlockByteProvider) iterator;
+            if (fChunk == null) {
+                fChunk = new byte[CHUNK_SIZE];
+            }
+            while (true) {
+                int len = provider.read(fChunk, 0, fChunk.length);
+                if (len < 0) {
+                    break;
+                }
+                update(fChunk, 0, len);
+            }
+            return this;
+        }
+        while (true) {
+            int x = iterator.getNext();
+            if (x < 0) {
+                break;
+            }
+            doUpdate(x);
+        }
+        return this;
+    }
+
+    public XXHash64 update(int value) {
+        doUpdate(value);
+        return this;
+    }
+
+    public XXHash64 update(String msg) {
+        return update(msg, 0, msg.length());
+    }
+
+    /**
+     * Processes the next 32-byte stripe given as four little-endian words.
+     * This method should be called only when this object is aligned on a
+     * stripe boundary (see {@link #isStripeAligned()}).
+     */
+    void updateStripe(long w1, long w2, long w3, long w4) {
+        processStripe(w1, w2, w3, w4);
+        fLength += 32;
+    }
+
+}
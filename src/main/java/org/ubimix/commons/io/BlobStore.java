@@ -0,0 +1,326 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.ubimix.commons.digests.DigestEncoding;
+import org.ubimix.commons.digests.Sha1Digest;
+import org.ubimix.commons.digests.Sha1Hashers;
+
+/**
+ * A content-addressable store of blobs in a local directory. Each blob is
+ * stored in a file named by the hex representation of its SHA1 digest; like
+ * in git, the first two digits are used as the name of a sub-directory, so
+ * directories do not grow too large.
+ * <p>
+ * New blobs are hashed while they are written in a temporary file of the
+ * store; the temporary file is flushed to the disk and then atomically
+ * renamed to its final name, so readers never see incomplete blobs, even
+ * after a crash. The directory containing the blob is flushed as well where
+ * the platform allows it. A blob file with a wrong length (left by older
+ * versions after a crash) is replaced when the same blob is added again.
+ * Blobs are never modified, so writers do not need locks: if several writers
+ * add the same blob at the same time then all of them rename files with the
+ * same content to the same name and the store keeps one of them. Blobs which
+ * are already in the store are not written again; for arrays the digest is
+ * calculated before writing, so existing blobs are not written at all.
+ * </p>
+ * <p>
+ * Blobs are read through {@link FileChannel}s; the
+ * {@link #transferTo(Sha1Digest, WritableByteChannel)} method copies a blob
+ * using {@link FileChannel#transferTo(long, long, WritableByteChannel)}, so
+ * the operating system can send it without copies in the user space.
+ * </p>
+ * 
+ * @author kotelnikov
+ */
+public class BlobStore {
+
+    /**
+     * Returns <code>true</code> if the given file exists and has the
+     * specified length.
+     */
+    private static boolean isStored(Path file, long length)
+        throws IOException {
+        try {
+            return Files.size(file) == length;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Flushes the content of the given file to the storage device.
+     */
+    private static void sync(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Flushes the entries of the given directory to the storage device. Not
+     * all platforms allow to open directories, so errors are ignored.
+     */
+    private static void syncDirectory(Path dir) {
+        try {
+            FileChannel channel = FileChannel.open(
+                dir,
+                StandardOpenOption.READ);
+            try {
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            // Directories can not be flushed on this platform
+        }
+    }
+
+    private final File fRoot;
+
+    private final File fTmpDir;
+
+    /**
+     * @param root the root directory of the store; it is created if it does
+     *        not exist
+     * @throws IOException if the directory can not be created
+     */
+    public BlobStore(File root) throws IOException {
+        fRoot = root;
+        fTmpDir = new File(root, "tmp");
+        Files.createDirectories(fTmpDir.toPath());
+    }
+
+    /**
+     * Moves the given temporary file to the place of the blob with the
+     * specified digest, unless the store already contains this blob. The
+     * temporary file should be already flushed to the disk.
+     */
+    private void commit(Path tmp, Sha1Digest digest, long length)
+        throws IOException {
+        Path target = getPath(digest);
+        if (isStored(target, length)) {
+            return;
+        }
+        Path dir = target.getParent();
+        boolean newDir = !Files.isDirectory(dir);
+        Files.createDirectories(dir);
+        if (newDir) {
+            syncDirectory(fRoot.toPath());
+        }
+        try {
+            // A damaged file of the blob is replaced
+            Files.move(
+                tmp,
+                target,
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        } catch (FileAlreadyExistsException e) {
+            // The same blob was added by another writer
+        }
+        syncDirectory(dir);
+    }
+
+    /**
+     * Checks if the file of the blob with the given digest exists. The digest
+     * does not give the length of the blob, so this method does not detect
+     * damaged files; such files are replaced by the <code>put</code> methods.
+     * 
+     * @param digest the digest of a blob
+     * @return <code>true</code> if the store contains the blob with the
+     *         given digest
+     */
+    public boolean contains(Sha1Digest digest) {
+        return Files.exists(getPath(digest));
+    }
+
+    /**
+     * Removes the blob with the given digest from the store.
+     * 
+     * @param digest the digest of the blob to remove
+     * @return <code>true</code> if the blob was removed
+     * @throws IOException if the blob can not be removed
+     */
+    public boolean delete(Sha1Digest digest) throws IOException {
+        return Files.deleteIfExists(getPath(digest));
+    }
+
+    /**
+     * Returns the file where the blob with the given digest is stored. The
+     * file exists only if the store contains the blob.
+     * 
+     * @param digest the digest of the blob
+     * @return the file of the blob
+     */
+    public File getFile(Sha1Digest digest) {
+        return getPath(digest).toFile();
+    }
+
+    /**
+     * @param digest the digest of a blob
+     * @return the length of the blob with the given digest
+     * @throws IOException if the store does not contain the blob
+     */
+    public long getLength(Sha1Digest digest) throws IOException {
+        return Files.size(getPath(digest));
+    }
+
+    private Path getPath(Sha1Digest digest) {
+        String hex = DigestEncoding.toHex(digest);
+        return new File(new File(fRoot, hex.substring(0, 2)), hex
+            .substring(2)).toPath();
+    }
+
+    public File getRoot() {
+        return fRoot;
+    }
+
+    private Path newTempFile() throws IOException {
+        return Files.createTempFile(fTmpDir.toPath(), "blob", ".tmp");
+    }
+
+    /**
+     * Opens the blob with the given digest for reading.
+     * 
+     * @param digest the digest of the blob
+     * @return a channel reading the blob; it should be closed by the caller
+     * @throws IOException if the store does not contain the blob
+     */
+    public FileChannel openChannel(Sha1Digest digest) throws IOException {
+        return FileChannel.open(getPath(digest), StandardOpenOption.READ);
+    }
+
+    /**
+     * Adds the given bytes to the store. The digest is calculated first, so
+     * if the store already contains these bytes then nothing is written.
+     * 
+     * @param array the content of the blob
+     * @return the digest of the blob
+     * @throws IOException if the blob can not be written
+     */
+    public Sha1Digest put(byte[] array) throws IOException {
+        Sha1Digest digest = Sha1Hashers.digest(array);
+        if (!isStored(getPath(digest), array.length)) {
+            Path tmp = newTempFile();
+            try {
+                FileChannel channel = FileChannel.open(
+                    tmp,
+                    StandardOpenOption.WRITE);
+                try {
+                    ByteBuffer buf = ByteBuffer.wrap(array);
+                    while (buf.hasRemaining()) {
+                        channel.write(buf);
+                    }
+                    channel.force(true);
+                } finally {
+                    channel.close();
+                }
+                commit(tmp, digest, array.length);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+        return digest;
+    }
+
+    /**
+     * Adds the content of the given stream to the store. The content is
+     * hashed while it is written in a temporary file. The stream is closed
+     * at the end.
+     * 
+     * @param input the content of the blob
+     * @return the digest of the blob
+     * @throws IOException if the stream can not be read or the blob can not
+     *         be written
+     */
+    public Sha1Digest put(InputStream input) throws IOException {
+        Path tmp = newTempFile();
+        try {
+            Sha1OutputStream out = new Sha1OutputStream(Files
+                .newOutputStream(tmp));
+            IOUtil.copy(input, out);
+            Sha1Digest digest = out.getDigest();
+            sync(tmp);
+            commit(tmp, digest, Files.size(tmp));
+            return digest;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Writes the blob with the given digest in the specified channel using
+     * the zero-copy transfer of the file system when it is possible. The
+     * target channel should be in the blocking mode.
+     * 
+     * @param digest the digest of the blob
+     * @param target the channel to write
+     * @return the number of written bytes
+     * @throws IOException if the store does not contain the blob or if it can
+     *         not be written
+     * @throws IllegalArgumentException if the target is a non-blocking
+     *         channel
+     */
+    public long transferTo(Sha1Digest digest, WritableByteChannel target)
+        throws IOException {
+        if (target instanceof SelectableChannel
+            && !((SelectableChannel) target).isBlocking()) {
+            throw new IllegalArgumentException(
+                "Non-blocking channels are not supported");
+        }
+        FileChannel channel = openChannel(digest);
+        try {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long len = channel.transferTo(
+                    position,
+                    size - position,
+                    target);
+                if (len <= 0) {
+                    throw new IOException("The target channel does not "
+                        + "accept bytes; written "
+                        + position
+                        + " of "
+                        + size);
+                }
+                position += len;
+            }
+            return size;
+        } finally {
+            channel.close();
+        }
+    }
+
+}
@@ -0,0 +1,389 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ubimix.commons.digests.Sha1Batch;
+import org.ubimix.commons.digests.Sha1Digest;
+import org.ubimix.commons.digests.Sha1Files;
+
+/**
+ * This class calculates digests of directory trees. Directories are listed
+ * and files are hashed in parallel; the number of files read at the same
+ * time is limited by the parallelism of the object, so a large tree does
+ * not flood the disks with requests. The digest of a directory is the SHA1
+ * of its entries sorted by names; each entry is the type of the entry ('d'
+ * or 'f'), the UTF-8 name, the 0 byte and the 20 bytes of the digest of the
+ * entry. So the root digest depends only on names and contents of files and
+ * not on the order in which they were hashed.
+ * <p>
+ * Symbolic links to files are hashed as regular files; symbolic links to
+ * directories are not followed (they could create cycles). Other special
+ * files are ignored.
+ * </p>
+ * 
+ * @author kotelnikov
+ */
+public class DirectoryDigest {
+
+    public static class Builder {
+
+        private Executor fExecutor;
+
+        private int fParallelism = 2 * Runtime
+            .getRuntime()
+            .availableProcessors();
+
+        public DirectoryDigest build() {
+            Executor executor = fExecutor;
+            if (executor == null) {
+                executor = Sha1Batch.getDefaultExecutor();
+            }
+            return new DirectoryDigest(executor, fParallelism);
+        }
+
+        /**
+         * Sets the executor listing directories and hashing files. By
+         * default the executor shared with {@link Sha1Batch}es is used.
+         */
+        public Builder executor(Executor executor) {
+            fExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Sets the maximal number of files hashed at the same time. By
+         * default it is twice the number of available processors.
+         */
+        public Builder parallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException(
+                    "Parallelism should be positive: " + parallelism);
+            }
+            fParallelism = parallelism;
+            return this;
+        }
+
+    }
+
+    /**
+     * A directory or a file of the hashed tree.
+     */
+    private static class Node {
+
+        private Node[] fChildren;
+
+        private Sha1Digest fDigest;
+
+        private final File fFile;
+
+        public Node(File file) {
+            fFile = file;
+        }
+
+        public boolean isDirectory() {
+            return fChildren != null;
+        }
+
+    }
+
+    /**
+     * The digest of a directory tree.
+     * 
+     * @author kotelnikov
+     */
+    public static class Result {
+
+        private Map<String, Sha1Digest> fManifest;
+
+        private Sha1Digest fRoot;
+
+        public Result(Sha1Digest root, Map<String, Sha1Digest> manifest) {
+            fRoot = root;
+            fManifest = manifest;
+        }
+
+        /**
+         * Returns an unmodifiable map of file paths relative to the root
+         * directory (with the '/' separator) to digests of file contents.
+         * Entries are sorted in the depth-first order of the tree, names of
+         * each directory are sorted.
+         * 
+         * @return the digests of all files of the tree
+         */
+        public Map<String, Sha1Digest> getManifest() {
+            return fManifest;
+        }
+
+        /**
+         * @return the digest of the root directory
+         */
+        public Sha1Digest getRoot() {
+            return fRoot;
+        }
+
+        @Override
+        public String toString() {
+            return fRoot + " (" + fManifest.size() + " files)";
+        }
+
+    }
+
+    /**
+     * The state of one tree walk.
+     */
+    private class Walk {
+
+        private Throwable fError;
+
+        private int fInFlight;
+
+        private final CountDownLatch fLatch = new CountDownLatch(1);
+
+        private final AtomicInteger fPending = new AtomicInteger();
+
+        private final Queue<Node> fQueue = new ArrayDeque<Node>();
+
+        private void done() {
+            if (fPending.decrementAndGet() == 0) {
+                fLatch.countDown();
+            }
+        }
+
+        private void execute(Runnable task) {
+            try {
+                fExecutor.execute(task);
+            } catch (RuntimeException e) {
+                onError(e);
+                done();
+            }
+        }
+
+        private void hashFile(final Node node) {
+            execute(new Runnable() {
+                public void run() {
+                    try {
+                        if (!isFailed()) {
+                            node.fDigest = Sha1Files.ofFile(node.fFile);
+                        }
+                    } catch (Throwable e) {
+                        onError(e);
+                    } finally {
+                        onFileHashed();
+                        done();
+                    }
+                }
+            });
+        }
+
+        private synchronized boolean isFailed() {
+            return fError != null;
+        }
+
+        private void listDirectory(final Node node) {
+            execute(new Runnable() {
+                public void run() {
+                    try {
+                        if (!isFailed()) {
+                            loadChildren(node);
+                        }
+                    } catch (Throwable e) {
+                        onError(e);
+                    } finally {
+                        done();
+                    }
+                }
+            });
+        }
+
+        private void loadChildren(Node node) throws IOException {
+            File[] list = node.fFile.listFiles();
+            if (list == null) {
+                throw new IOException("Can not list the directory "
+                    + node.fFile);
+            }
+            Arrays.sort(list, new Comparator<File>() {
+                public int compare(File o1, File o2) {
+                    return o1.getName().compareTo(o2.getName());
+                }
+            });
+            int count = 0;
+            Node[] children = new Node[list.length];
+            for (File file : list) {
+                if (file.isDirectory()) {
+                    if (!Files.isSymbolicLink(file.toPath())) {
+                        Node child = new Node(file);
+                        child.fChildren = new Node[0];
+                        children[count++] = child;
+                    }
+                } else if (file.isFile()) {
+                    children[count++] = new Node(file);
+                }
+            }
+            node.fChildren = Arrays.copyOf(children, count);
+            fPending.addAndGet(count);
+            for (Node child : node.fChildren) {
+                if (child.isDirectory()) {
+                    listDirectory(child);
+                } else {
+                    scheduleFile(child);
+                }
+            }
+        }
+
+        private synchronized void onError(Throwable e) {
+            if (fError == null) {
+                fError = e;
+            }
+        }
+
+        /**
+         * Starts hashing of the next queued file or releases the slot of the
+         * hashed file.
+         */
+        private void onFileHashed() {
+            Node next;
+            synchronized (this) {
+                next = fQueue.poll();
+                if (next == null) {
+                    fInFlight--;
+                }
+            }
+            if (next != null) {
+                hashFile(next);
+            }
+        }
+
+        public void run(Node root) throws IOException {
+            fPending.set(1);
+            listDirectory(root);
+            try {
+                fLatch.await();
+            } catch (InterruptedException e) {
+                onError(e);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            synchronized (this) {
+                if (fError instanceof IOException) {
+                    throw (IOException) fError;
+                } else if (fError instanceof RuntimeException) {
+                    throw (RuntimeException) fError;
+                } else if (fError != null) {
+                    throw new IOException(fError);
+                }
+            }
+        }
+
+        /**
+         * Starts hashing of the given file or puts it in the queue if too
+         * many files are already hashed.
+         */
+        private void scheduleFile(Node node) {
+            synchronized (this) {
+                if (fInFlight >= fParallelism) {
+                    fQueue.add(node);
+                    return;
+                }
+                fInFlight++;
+            }
+            hashFile(node);
+        }
+
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Calculates the digest of the given directory and adds digests of all
+     * files of this directory to the manifest.
+     */
+    private static Sha1Digest getDigest(
+        Node node,
+        String prefix,
+        Map<String, Sha1Digest> manifest) {
+        byte[] buf = new byte[20];
+        Sha1Digest.Builder builder = Sha1Digest.builder();
+        for (Node child : node.fChildren) {
+            String name = child.fFile.getName();
+            Sha1Digest value;
+            if (child.isDirectory()) {
+                value = getDigest(child, prefix + name + "/", manifest);
+                builder.update('d');
+            } else {
+                value = child.fDigest;
+                manifest.put(prefix + name, value);
+                builder.update('f');
+            }
+            builder.update(name);
+            builder.update(0);
+            value.getBytes(buf, 0);
+            builder.update(buf);
+        }
+        return builder.build();
+    }
+
+    private final Executor fExecutor;
+
+    private final int fParallelism;
+
+    private DirectoryDigest(Executor executor, int parallelism) {
+        fExecutor = executor;
+        fParallelism = parallelism;
+    }
+
+    /**
+     * Calculates the digest of the given directory tree.
+     * 
+     * @param dir the root directory of the tree
+     * @return the root digest and digests of all files of the tree
+     * @throws IOException if a directory can not be listed or a file can not
+     *         be read
+     */
+    public Result digest(File dir) throws IOException {
+        if (!dir.isDirectory()) {
+            throw new IOException("Not a directory: " + dir);
+        }
+        Node root = new Node(dir);
+        new Walk().run(root);
+        Map<String, Sha1Digest> manifest;
+        manifest = new LinkedHashMap<String, Sha1Digest>();
+        Sha1Digest digest = getDigest(root, "", manifest);
+        return new Result(digest, Collections.unmodifiableMap(manifest));
+    }
+
+    public int getParallelism() {
+        return fParallelism;
+    }
+
+}
@@ -0,0 +1,585 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.ubimix.commons.digests.Sha1Digest;
+import org.ubimix.commons.digests.Sha1Files;
+
+/**
+ * This cache keeps digests of files, so unchanged files are not read again.
+ * A cached digest is valid while the size, the modification time and the
+ * file key (the inode, if the file system provides it) of the file are the
+ * same as when the file was hashed. Like in the git index, files modified
+ * less than {@link #RACY_INTERVAL} milliseconds before hashing are not
+ * cached: they can be changed again without a visible change of the
+ * modification time.
+ * <p>
+ * Entries are stored in an append-only log file. Each record starts with its
+ * length, so a record truncated or damaged by a crash is detected when the
+ * log is opened: the log is truncated after the last valid record. Only the
+ * paths and positions of records are kept in memory;
+ * records are read from the log on demand and a bounded number of recently
+ * used entries is kept in the hot set. When the log contains more obsolete
+ * records than live ones it is compacted: live records are copied in a new
+ * file which atomically replaces the log.
+ * </p>
+ * <p>
+ * Lookups take a shared lock and read records with positional reads, so
+ * concurrent readers do not block each other; appending and compaction take
+ * an exclusive lock. Files are hashed outside of locks. The log can be opened
+ * by only one cache at a time: an exclusive file lock is taken on a sibling
+ * file with the ".lock" suffix (the log itself is replaced by compactions, so
+ * it can not hold the lock).
+ * </p>
+ * 
+ * @author kotelnikov
+ */
+public class FileDigestCache implements Closeable {
+
+    /**
+     * A cached digest with the file attributes it corresponds to.
+     */
+    private static class CacheEntry {
+
+        private final Sha1Digest fDigest;
+
+        private final String fFileKey;
+
+        private final long fModified;
+
+        private final String fPath;
+
+        private final long fSize;
+
+        public CacheEntry(
+            String path,
+            long size,
+            long modified,
+            String fileKey,
+            Sha1Digest digest) {
+            fPath = path;
+            fSize = size;
+            fModified = modified;
+            fFileKey = fileKey;
+            fDigest = digest;
+        }
+
+        public boolean matches(long size, long modified, String fileKey) {
+            return fSize == size
+                && fModified == modified
+                && fFileKey.equals(fileKey);
+        }
+
+    }
+
+    /**
+     * The log is compacted only when it contains at least this number of
+     * obsolete records.
+     */
+    private static final int COMPACTION_THRESHOLD = 1024;
+
+    private static final int DEFAULT_HOT_SET_SIZE = 10000;
+
+    private static final int MAGIC = 0x53484131;
+
+    /**
+     * The maximal length of a record: two strings of at most 65535 bytes, two
+     * long values and a digest
+     */
+    private static final int MAX_RECORD_SIZE = 2 * (2 + 65535) + 16 + 20;
+
+    /**
+     * The minimal length of a record: two empty strings, two long values and
+     * a digest
+     */
+    private static final int MIN_RECORD_SIZE = 2 * 2 + 16 + 20;
+
+    /**
+     * Files modified less than this number of milliseconds before hashing are
+     * not cached.
+     */
+    public static final long RACY_INTERVAL = 2000;
+
+    private static final int VERSION = 1;
+
+    private static String getFileKey(BasicFileAttributes attributes) {
+        Object key = attributes.fileKey();
+        return key != null ? key.toString() : "";
+    }
+
+    private static long getModified(BasicFileAttributes attributes) {
+        return attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    private static CacheEntry readEntry(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(
+            new ByteArrayInputStream(record));
+        String path = in.readUTF();
+        long size = in.readLong();
+        long modified = in.readLong();
+        String fileKey = in.readUTF();
+        byte[] digest = new byte[20];
+        in.readFully(digest);
+        if (in.available() != 0) {
+            throw new IOException("Bad digest cache record");
+        }
+        return new CacheEntry(
+            path,
+            size,
+            modified,
+            fileKey,
+            Sha1Digest.fromBytes(digest, 0));
+    }
+
+    private static byte[] toRecord(CacheEntry entry) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buf);
+        out.writeInt(0);
+        out.writeUTF(entry.fPath);
+        out.writeLong(entry.fSize);
+        out.writeLong(entry.fModified);
+        out.writeUTF(entry.fFileKey);
+        out.write(entry.fDigest.toByteArray());
+        out.flush();
+        byte[] record = buf.toByteArray();
+        int len = record.length - 4;
+        record[0] = (byte) (len >>> 24);
+        record[1] = (byte) (len >>> 16);
+        record[2] = (byte) (len >>> 8);
+        record[3] = (byte) len;
+        return record;
+    }
+
+    private static void write(FileChannel channel, byte[] record, long position)
+        throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(record);
+        while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+    }
+
+    private static long writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8);
+        buf.putInt(MAGIC).putInt(VERSION).flip();
+        channel.write(buf, 0);
+        return 8;
+    }
+
+    private FileChannel fChannel;
+
+    /**
+     * The position where the next record will be appended
+     */
+    private long fEnd;
+
+    /**
+     * The lock preventing other processes from using the same log
+     */
+    private FileLock fFileLock;
+
+    private final AtomicLong fHits = new AtomicLong();
+
+    /**
+     * Recently used entries; access to this map is synchronized on the map
+     * itself.
+     */
+    private final Map<String, CacheEntry> fHotSet;
+
+    private final Path fIndex;
+
+    private final ReadWriteLock fLock = new ReentrantReadWriteLock();
+
+    private final AtomicLong fMisses = new AtomicLong();
+
+    /**
+     * Positions of the latest records for each path
+     */
+    private Map<String, Long> fOffsets = new HashMap<String, Long>();
+
+    /**
+     * The total number of records in the log
+     */
+    private int fRecordCount;
+
+    public FileDigestCache(File index) throws IOException {
+        this(index, DEFAULT_HOT_SET_SIZE);
+    }
+
+    /**
+     * Opens the cache stored in the given file. The file is created if it
+     * does not exist.
+     * 
+     * @param index the file containing the log of the cache
+     * @param hotSetSize the maximal number of entries kept in memory
+     * @throws IOException if the log can not be opened
+     */
+    public FileDigestCache(File index, final int hotSetSize)
+        throws IOException {
+        fIndex = index.toPath();
+        fHotSet = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, CacheEntry> eldest) {
+                return size() > hotSetSize;
+            }
+        };
+        open();
+    }
+
+    /**
+     * Appends the given entry to the log; this method should be called under
+     * the write lock.
+     */
+    private void append(CacheEntry entry) throws IOException {
+        byte[] record = toRecord(entry);
+        write(fChannel, record, fEnd);
+        fOffsets.put(entry.fPath, fEnd);
+        fEnd += record.length;
+        fRecordCount++;
+    }
+
+    public void close() throws IOException {
+        fLock.writeLock().lock();
+        try {
+            try {
+                fChannel.close();
+            } finally {
+                // Closing the channel releases the lock
+                fFileLock.channel().close();
+            }
+        } finally {
+            fLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the log keeping only the latest record of each path.
+     * 
+     * @throws IOException
+     */
+    public void compact() throws IOException {
+        fLock.writeLock().lock();
+        try {
+            Path tmp = fIndex.resolveSibling(fIndex.getFileName() + ".tmp");
+            Map<String, Long> offsets = new HashMap<String, Long>();
+            long end;
+            FileChannel out = FileChannel.open(
+                tmp,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+            try {
+                end = writeHeader(out);
+                for (Map.Entry<String, Long> e : fOffsets.entrySet()) {
+                    byte[] record = toRecord(readEntry(e.getValue()));
+                    write(out, record, end);
+                    offsets.put(e.getKey(), end);
+                    end += record.length;
+                }
+                out.force(false);
+            } finally {
+                out.close();
+            }
+            // The current log stays open and valid until the new one
+            // replaces it
+            try {
+                Files.move(
+                    tmp,
+                    fIndex,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+            FileChannel channel = FileChannel.open(
+                fIndex,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+            FileChannel old = fChannel;
+            fChannel = channel;
+            old.close();
+            fOffsets = offsets;
+            fEnd = end;
+            fRecordCount = offsets.size();
+        } finally {
+            fLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the digest of the given file. If the file was not changed since
+     * it was hashed then the cached digest is returned without reading the
+     * file.
+     * 
+     * @param file the file to hash
+     * @return the digest of the file
+     * @throws IOException if the file can not be read
+     */
+    public Sha1Digest getDigest(File file) throws IOException {
+        return getDigest(file.toPath());
+    }
+
+    /**
+     * Returns the digest of the file with the given path. If the file was not
+     * changed since it was hashed then the cached digest is returned without
+     * reading the file.
+     * 
+     * @param file the file to hash
+     * @return the digest of the file
+     * @throws IOException if the file can not be read
+     */
+    public Sha1Digest getDigest(Path file) throws IOException {
+        String path = file.toAbsolutePath().normalize().toString();
+        BasicFileAttributes attributes = Files.readAttributes(
+            file,
+            BasicFileAttributes.class);
+        long size = attributes.size();
+        long modified = getModified(attributes);
+        String fileKey = getFileKey(attributes);
+        CacheEntry entry = getEntry(path);
+        if (entry != null && entry.matches(size, modified, fileKey)) {
+            fHits.incrementAndGet();
+            return entry.fDigest;
+        }
+        fMisses.incrementAndGet();
+        long start = System.currentTimeMillis();
+        Sha1Digest digest = Sha1Files.ofFile(file);
+        BasicFileAttributes after = Files.readAttributes(
+            file,
+            BasicFileAttributes.class);
+        boolean stable = after.size() == size
+            && getModified(after) == modified
+            && start - after.lastModifiedTime().toMillis() >= RACY_INTERVAL;
+        if (stable) {
+            put(new CacheEntry(path, size, modified, fileKey, digest));
+        }
+        return digest;
+    }
+
+    private CacheEntry getEntry(String path) throws IOException {
+        CacheEntry entry;
+        synchronized (fHotSet) {
+            entry = fHotSet.get(path);
+        }
+        if (entry == null) {
+            fLock.readLock().lock();
+            try {
+                Long offset = fOffsets.get(path);
+                if (offset != null) {
+                    entry = readEntry(offset);
+                }
+            } finally {
+                fLock.readLock().unlock();
+            }
+            if (entry != null) {
+                synchronized (fHotSet) {
+                    fHotSet.put(path, entry);
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * @return the number of digests returned from the cache
+     */
+    public long getHits() {
+        return fHits.get();
+    }
+
+    /**
+     * @return the number of files which were read and hashed
+     */
+    public long getMisses() {
+        return fMisses.get();
+    }
+
+    /**
+     * @return the number of files in the cache
+     */
+    public int getSize() {
+        fLock.readLock().lock();
+        try {
+            return fOffsets.size();
+        } finally {
+            fLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Locks and opens the log and loads positions of its records. The log is
+     * truncated after the last valid record.
+     */
+    private void open() throws IOException {
+        Path lock = fIndex.resolveSibling(fIndex.getFileName() + ".lock");
+        FileChannel lockChannel = FileChannel.open(
+            lock,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE);
+        boolean ok = false;
+        try {
+            try {
+                fFileLock = lockChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                fFileLock = null;
+            }
+            if (fFileLock == null) {
+                throw new IOException("The digest cache is used by another "
+                    + "process: "
+                    + fIndex);
+            }
+            fChannel = FileChannel.open(
+                fIndex,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+            try {
+                readLog();
+                ok = true;
+            } finally {
+                if (!ok) {
+                    fChannel.close();
+                }
+            }
+        } finally {
+            if (!ok) {
+                lockChannel.close();
+            }
+        }
+    }
+
+    /**
+     * Adds the given entry to the cache and compacts the log if it contains
+     * too many obsolete records.
+     */
+    private void put(CacheEntry entry) throws IOException {
+        boolean compact;
+        fLock.writeLock().lock();
+        try {
+            append(entry);
+            int obsolete = fRecordCount - fOffsets.size();
+            compact = obsolete >= COMPACTION_THRESHOLD
+                && obsolete > fOffsets.size();
+        } finally {
+            fLock.writeLock().unlock();
+        }
+        synchronized (fHotSet) {
+            fHotSet.put(entry.fPath, entry);
+        }
+        if (compact) {
+            compact();
+        }
+    }
+
+    /**
+     * Reads the record with the given position; this method should be called
+     * under a lock.
+     */
+    private CacheEntry readEntry(long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        readFully(header, offset);
+        byte[] record = new byte[header.getInt(0)];
+        readFully(ByteBuffer.wrap(record), offset + 4);
+        return readEntry(record);
+    }
+
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int len = fChannel.read(buf, position);
+            if (len < 0) {
+                throw new EOFException();
+            }
+            position += len;
+        }
+    }
+
+    /**
+     * Loads positions of all valid records of the log. Reading stops at the
+     * first record which is truncated, has an impossible length or can not
+     * be parsed, and the rest of the log is removed.
+     */
+    private void readLog() throws IOException {
+        long size = fChannel.size();
+        if (size == 0) {
+            fEnd = writeHeader(fChannel);
+            return;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+            Files.newInputStream(fIndex)));
+        try {
+            if (size < 8 || in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Bad digest cache file: " + fIndex);
+            }
+            long pos = 8;
+            while (size - pos >= 4) {
+                int len = in.readInt();
+                if (len < MIN_RECORD_SIZE
+                    || len > MAX_RECORD_SIZE
+                    || len > size - pos - 4) {
+                    break;
+                }
+                byte[] record = new byte[len];
+                in.readFully(record);
+                CacheEntry entry;
+                try {
+                    entry = readEntry(record);
+                } catch (IOException e) {
+                    break;
+                }
+                fOffsets.put(entry.fPath, pos);
+                fRecordCount++;
+                pos += 4 + len;
+            }
+            fEnd = pos;
+        } finally {
+            in.close();
+        }
+        if (size > fEnd) {
+            fChannel.truncate(fEnd);
+        }
+    }
+
+}
@@ -24,6 +24,9 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Reader;
+
+import org.ubimix.commons.digests.Sha1Digest;
 
 /**
  * @author kotelnikov
@@ -47,6 +50,37 @@ public class IOUtil {
         }
     }
 
+    /**
+     * Copies all bytes from the given input stream to the output stream and
+     * calculates their SHA1 digest in the same pass: each chunk is hashed
+     * directly from the copy buffer. Both streams are closed at the end.
+     * 
+     * @param input the stream to read
+     * @param output the stream to write
+     * @return the digest of all copied bytes
+     * @throws IOException
+     */
+    public static Sha1Digest copyWithDigest(
+        InputStream input,
+        OutputStream output) throws IOException {
+        Sha1Digest.Builder builder = Sha1Digest.builder();
+        try {
+            try {
+                byte[] buf = new byte[1024 * 10];
+                int len;
+                while ((len = input.read(buf)) > 0) {
+                    output.write(buf, 0, len);
+                    builder.update(buf, 0, len);
+                }
+            } finally {
+                output.close();
+            }
+        } finally {
+            input.close();
+        }
+        return builder.build();
+    }
+
     public static boolean delete(File file) {
         boolean result = true;
         if (file.isDirectory()) {
@@ -63,6 +97,43 @@ public class IOUtil {
         return result && file.delete();
     }
 
+    /**
+     * Calculates the SHA1 digest of the UTF-8 representation of all
+     * characters of the given reader. Characters are read in a reusable
+     * window and encoded in bulk, so the text is never loaded in memory. A
+     * high surrogate character at the end of the window is moved to the
+     * beginning of the next one, so surrogate pairs are never split. The
+     * reader is closed at the end.
+     * 
+     * @param reader the reader to hash
+     * @return the digest of all characters of the reader
+     * @throws IOException
+     */
+    public static Sha1Digest digest(Reader reader) throws IOException {
+        Sha1Digest.Builder builder = Sha1Digest.builder();
+        try {
+            char[] buf = new char[1024 * 10];
+            int pos = 0;
+            int len;
+            while ((len = reader.read(buf, pos, buf.length - pos)) >= 0) {
+                int end = pos + len;
+                pos = 0;
+                if (end > 0 && Character.isHighSurrogate(buf[end - 1])) {
+                    end--;
+                    pos = 1;
+                }
+                builder.update(buf, 0, end);
+                if (pos > 0) {
+                    buf[0] = buf[end];
+                }
+            }
+            builder.update(buf, 0, pos);
+        } finally {
+            reader.close();
+        }
+        return builder.build();
+    }
+
     public static String readString(File file) throws IOException {
         InputStream input = new FileInputStream(file);
         return readString(input);
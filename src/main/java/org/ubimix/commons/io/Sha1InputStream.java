@@ -0,0 +1,101 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.ubimix.commons.digests.Sha1Digest;
+
+/**
+ * This input stream calculates the SHA1 digest of all bytes read from the
+ * underlying stream. Bulk reads are hashed directly from the buffer given by
+ * the caller. Skipped bytes are read and hashed as well, so the digest
+ * always corresponds to the whole consumed content. Marks are not supported.
+ * 
+ * @author kotelnikov
+ */
+public class Sha1InputStream extends FilterInputStream {
+
+    private Sha1Digest.Builder fBuilder = Sha1Digest.builder();
+
+    private byte[] fSkipBuf;
+
+    public Sha1InputStream(InputStream in) {
+        super(in);
+    }
+
+    /**
+     * Returns the digest of all bytes read so far.
+     * 
+     * @return the digest of all bytes read so far
+     */
+    public Sha1Digest getDigest() {
+        return fBuilder.build();
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int result = in.read();
+        if (result >= 0) {
+            fBuilder.update(result);
+        }
+        return result;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int result = in.read(b, off, len);
+        if (result > 0) {
+            fBuilder.update(b, off, result);
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("Mark/reset is not supported");
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (fSkipBuf == null) {
+            fSkipBuf = new byte[1024 * 10];
+        }
+        long result = 0;
+        while (result < n) {
+            int len = (int) Math.min(fSkipBuf.length, n - result);
+            len = read(fSkipBuf, 0, len);
+            if (len <= 0) {
+                break;
+            }
+            result += len;
+        }
+        return result;
+    }
+
+}
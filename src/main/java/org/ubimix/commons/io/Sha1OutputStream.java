@@ -0,0 +1,61 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.ubimix.commons.digests.Sha1Digest;
+
+/**
+ * This output stream calculates the SHA1 digest of all bytes written to the
+ * underlying stream. Bulk writes are passed to the underlying stream and
+ * hashed directly from the buffer given by the caller.
+ * 
+ * @author kotelnikov
+ */
+public class Sha1OutputStream extends FilterOutputStream {
+
+    private Sha1Digest.Builder fBuilder = Sha1Digest.builder();
+
+    public Sha1OutputStream(OutputStream out) {
+        super(out);
+    }
+
+    /**
+     * Returns the digest of all bytes written so far.
+     * 
+     * @return the digest of all bytes written so far
+     */
+    public Sha1Digest getDigest() {
+        return fBuilder.build();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        fBuilder.update(b, off, len);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        fBuilder.update(b);
+    }
+
+}
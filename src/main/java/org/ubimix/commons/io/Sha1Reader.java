@@ -0,0 +1,145 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.io;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import org.ubimix.commons.digests.Sha1Digest;
+
+/**
+ * This reader calculates the SHA1 digest of the UTF-8 representation of all
+ * characters read from the underlying reader. Bulk reads are encoded directly
+ * from the buffer given by the caller. A high surrogate character at the end
+ * of a read is kept until the next read, so surrogate pairs split between
+ * reads are encoded as one code point. Skipped characters are read and hashed
+ * as well. Marks are not supported.
+ * 
+ * @author kotelnikov
+ */
+public class Sha1Reader extends FilterReader {
+
+    private Sha1Digest.Builder fBuilder = Sha1Digest.builder();
+
+    /**
+     * This buffer is used to hash characters returned by {@link #read()}.
+     */
+    private final char[] fChar = new char[1];
+
+    /**
+     * This buffer contains the high surrogate character kept from the
+     * previous read and the first character of the next read.
+     */
+    private char[] fPair = new char[2];
+
+    private boolean fPending;
+
+    private char[] fSkipBuf;
+
+    public Sha1Reader(Reader in) {
+        super(in);
+    }
+
+    /**
+     * Returns the digest of all characters read so far. If the last read
+     * character is an unpaired high surrogate then it is hashed as the '?'
+     * symbol.
+     * 
+     * @return the digest of all characters read so far
+     */
+    public Sha1Digest getDigest() {
+        if (!fPending) {
+            return fBuilder.build();
+        }
+        return Sha1Digest
+            .builder(fBuilder.getState())
+            .update(fPair, 0, 1)
+            .build();
+    }
+
+    private void hash(char[] array, int offset, int len) {
+        int end = offset + len;
+        if (fPending && offset < end) {
+            fPair[1] = array[offset];
+            boolean pair = Character.isLowSurrogate(fPair[1]);
+            fBuilder.update(fPair, 0, pair ? 2 : 1);
+            if (pair) {
+                offset++;
+            }
+            fPending = false;
+        }
+        if (offset < end && Character.isHighSurrogate(array[end - 1])) {
+            end--;
+            fPair[0] = array[end];
+            fPending = true;
+        }
+        fBuilder.update(array, offset, end - offset);
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("Mark/reset is not supported");
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int result = in.read();
+        if (result >= 0) {
+            fChar[0] = (char) result;
+            hash(fChar, 0, 1);
+        }
+        return result;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        int result = in.read(cbuf, off, len);
+        if (result > 0) {
+            hash(cbuf, off, result);
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("Mark/reset is not supported");
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (fSkipBuf == null) {
+            fSkipBuf = new char[1024 * 10];
+        }
+        long result = 0;
+        while (result < n) {
+            int len = (int) Math.min(fSkipBuf.length, n - result);
+            len = read(fSkipBuf, 0, len);
+            if (len <= 0) {
+                break;
+            }
+            result += len;
+        }
+        return result;
+    }
+
+}
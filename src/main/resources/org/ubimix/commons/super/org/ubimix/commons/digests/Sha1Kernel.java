@@ -0,0 +1,101 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ * 
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.ubimix.commons.digests;
+
+/**
+ * GWT version of the SHA1 compression function. This class replaces the JVM
+ * kernel in GWT clients. All additions are performed using 16-bit operations;
+ * this is a workaround for bugs in some java script interpreters.
+ * 
+ * @author kotelnikov
+ */
+final class Sha1Kernel {
+
+    private static int add(int x, int y) {
+        int l = (x & 0xFFFF) + (y & 0xFFFF);
+        int h = (x >> 16) + (y >> 16) + (l >> 16);
+        return (h << 16) | (l & 0xFFFF);
+    }
+
+    /**
+     * Processes one 64-byte block and updates the chaining state.
+     * 
+     * @param state the five chaining words of the digest
+     * @param w the message schedule buffer; the first 16 cells contain the
+     *        block to process and the remaining 64 cells are used as a
+     *        scratch space
+     */
+    static void compress(int[] state, int[] w) {
+        for (int i = 16; i <= 79; i++) {
+            w[i] = rotateLeft(w[i - 3] ^ w[i - 8] ^ w[i - 14] ^ w[i - 16], 1);
+        }
+        int a = state[0];
+        int b = state[1];
+        int c = state[2];
+        int d = state[3];
+        int e = state[4];
+        for (int i = 0; i < 80; i++) {
+            int f = w[i];
+            int temp = 0;
+            switch (i / 20) {
+                case 0:
+                    temp = add(
+                        add(((b & c) | (~b & d)), add(e, f)),
+                        0x5A827999);
+                    break;
+                case 1:
+                    temp = add(add((b ^ c ^ d), add(e, f)), 0x6ED9EBA1);
+                    break;
+                case 2:
+                    temp = add(
+                        add(((b & c) | (b & d) | (c & d)), add(e, f)),
+                        0x8F1BBCDC);
+                    break;
+                case 3:
+                    temp = add(add((b ^ c ^ d), add(e, f)), 0xCA62C1D6);
+                    break;
+            }
+            temp = add(rotateLeft(a, 5), temp);
+            e = d;
+            d = c;
+            c = rotateLeft(b, 30);
+            b = a;
+            a = temp;
+        }
+        state[0] = add(state[0], a);
+        state[1] = add(state[1], b);
+        state[2] = add(state[2], c);
+        state[3] = add(state[3], d);
+        state[4] = add(state[4], e);
+    }
+
+    /**
+     * Metrics are not collected in GWT clients.
+     * 
+     * @param length the length of the hashed message in bytes
+     */
+    static void onFinish(long length) {
+    }
+
+    private static int rotateLeft(int n, int s) {
+        return (n << s) | (n >>> (32 - s));
+    }
+
+    private Sha1Kernel() {
+    }
+
+}
@@ -0,0 +1,144 @@
+/**
+ * 
+ */
+package org.ubimix.commons.config;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.ubimix.commons.config.ConfigParser.NodeHandler;
+import org.xml.sax.Attributes;
+
+/**
+ * @author kotelnikov
+ */
+public class ConfigParserTest extends TestCase {
+
+    private class Handler extends NodeHandler {
+
+        private final String fLabel;
+
+        public Handler(String label) {
+            fLabel = label;
+        }
+
+        @Override
+        public void beginNode(
+            String uri,
+            String localName,
+            String name,
+            Attributes attributes) throws Exception {
+            fLog.add(fLabel + ":" + name);
+        }
+
+    }
+
+    private List<String> fLog = new ArrayList<String>();
+
+    private ConfigParser fParser;
+
+    /**
+     * @param name
+     */
+    public ConfigParserTest(String name) {
+        super(name);
+    }
+
+    private void parse(String xml, String control) throws Exception {
+        fLog.clear();
+        fParser.parse(new StringReader(xml));
+        assertEquals(control, fLog.toString());
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        fParser = new ConfigParser();
+    }
+
+    public void testFlags() throws Exception {
+        // Quotes, comments and flags should not leak into other masks
+        fParser.registerHandler("a\\Qx", new Handler("quote"));
+        fParser.registerHandler("b", new Handler("b"));
+        fParser.registerHandler("b/c+", new Handler("c"));
+        fParser.registerHandler("(?x)a # c", new Handler("comment"));
+        fParser.registerHandler("zz", new Handler("zz"));
+        fParser.registerHandler("zz/y+", new Handler("y"));
+        fParser.registerHandler("(?i)q.*", new Handler("q"));
+        fParser.registerHandler("zz/Y+/.*", new Handler("any"));
+        parse("<b><cc/></b>", "[b:b, c:cc]");
+        parse("<zz><yy/><Y><YY/></Y></zz>", "[zz:zz, y:yy, any:YY]");
+        parse("<ax/>", "[quote:ax]");
+        parse("<a/>", "[comment:a]");
+        parse("<Qq/>", "[q:Qq]");
+    }
+
+    public void testGroups() throws Exception {
+        // Groups in masks should not change the order of masks
+        fParser.registerHandler("a/(b|c)/(d)", new Handler("x"));
+        fParser.registerHandler("a/(c)/.*", new Handler("y"));
+        fParser.registerHandler("a/((c))", new Handler("z"));
+        // Back references and named groups are matched separately
+        fParser.registerHandler("a/(\\w)\\1", new Handler("ref"));
+        fParser.registerHandler("a/(?<n>\\w)x\\k<n>", new Handler("named"));
+        fParser.registerHandler("a/.*", new Handler("any"));
+        parse(
+            "<a><b><d/></b><c><d/><e/></c><ff/><txt/><g/></a>",
+            "[any:b, x:d, z:c, x:d, y:e, ref:ff, named:txt, any:g]");
+    }
+
+    public void testLiterals() throws Exception {
+        fParser.registerHandler("a/.*", new Handler("pattern"));
+        fParser.registerHandler("a/b", new Handler("literal"));
+        fParser.registerHandler("/a", new Handler("slash"));
+        // Masks equal to the path have priority even if they are patterns
+        fParser.registerHandler("a/c.x", new Handler("exact"));
+        parse(
+            "<a><b/><c/><cyx/><c.x/></a>",
+            "[literal:b, pattern:c, pattern:cyx, exact:c.x]");
+    }
+
+    public void testNullHandlers() throws Exception {
+        fParser.registerHandler("a/b", null);
+        fParser.registerHandler("a/.*", null);
+        fParser.registerHandler("a/[b-c]", new Handler("x"));
+        parse("<a><b/><c/><d/></a>", "[x:b, x:c]");
+    }
+
+    public void testOrder() throws Exception {
+        fParser.registerHandler("a/b/.*", new Handler("first"));
+        fParser.registerHandler(".*/c", new Handler("second"));
+        fParser.registerHandler("a", new Handler("root"));
+        parse(
+            "<a><b><c/><d/></b><x><c/></x></a>",
+            "[root:a, first:c, first:d, second:c]");
+        // The same path gets the same handler from the cache
+        parse("<a><b><c/></b><b><c/></b></a>", "[root:a, first:c, first:c]");
+    }
+
+    public void testRegistration() throws Exception {
+        fParser.registerHandler("a/b", new Handler("b"));
+        parse("<a><b><c/></b></a>", "[b:b]");
+        fParser.registerHandler("a/b/c", new Handler("c"));
+        fParser.registerHandler("a/.*", new Handler("any"));
+        parse("<a><b><c/></b><d/></a>", "[b:b, c:c, any:d]");
+
+        // Handlers can be registered while parsing
+        fParser = new ConfigParser();
+        fParser.registerHandler("a", new NodeHandler() {
+            @Override
+            public void beginNode(
+                String uri,
+                String localName,
+                String name,
+                Attributes attributes) throws Exception {
+                fParser.registerHandler("a/b/c", new Handler("late"));
+            }
+        });
+        parse("<a><b><c/></b></a>", "[late:c]");
+    }
+
+}
@@ -0,0 +1,110 @@
+/**
+ * 
+ */
+package org.ubimix.commons.digests;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import junit.framework.TestCase;
+
+/**
+ * @author kotelnikov
+ */
+public class HmacSHA1Test extends TestCase {
+
+    /**
+     * @param name
+     */
+    public HmacSHA1Test(String name) {
+        super(name);
+    }
+
+    private static byte[] fill(int value, int len) {
+        byte[] array = new byte[len];
+        Arrays.fill(array, (byte) value);
+        return array;
+    }
+
+    private static String pbkdf2(
+        String password,
+        String salt,
+        int iterations,
+        int len) throws Exception {
+        byte[] key = HmacSHA1.pbkdf2(
+            password.getBytes("UTF-8"),
+            salt.getBytes("UTF-8"),
+            iterations,
+            len);
+        int[] array = new int[key.length];
+        for (int i = 0; i < key.length; i++) {
+            array[i] = key[i] & 0xFF;
+        }
+        return SHA1.toHex(array);
+    }
+
+    public void testKnownCodes() throws Exception {
+        // RFC 2202
+        Sha1Digest code = HmacSHA1.mac(fill(0x0b, 20), "Hi There"
+            .getBytes("UTF-8"));
+        assertEquals("b617318655057264e28bc0b6fb378c8ef146be00", code
+            .toString());
+        HmacSHA1 hmac = new HmacSHA1("Jefe".getBytes("UTF-8"));
+        hmac.update("what do ya want for nothing?");
+        assertEquals("effcdf6ae5eb2fa2d27416d5f184df9c259a7c79", hmac
+            .getMac()
+            .toString());
+        // The same object can be re-used
+        hmac.update("what do ya want ").update("for nothing?");
+        assertEquals("effcdf6ae5eb2fa2d27416d5f184df9c259a7c79", hmac
+            .getMac()
+            .toString());
+        hmac = new HmacSHA1(fill(0xaa, 80));
+        hmac.update("Test Using Larger Than Block-Size Key - Hash Key First");
+        assertEquals("aa4ae5e15272d00e95705637ce8a3b55ed402112", hmac
+            .getMac()
+            .toString());
+    }
+
+    public void testPbkdf2() throws Exception {
+        // RFC 6070
+        assertEquals(
+            "0c60c80f961f0e71f3a9b524af6012062fe037a6",
+            pbkdf2("password", "salt", 1, 20));
+        assertEquals(
+            "ea6c014dc72d6f8ccd1ed92ace1d41f0d8de8957",
+            pbkdf2("password", "salt", 2, 20));
+        assertEquals(
+            "4b007901b765489abead49d926f721d065a429c1",
+            pbkdf2("password", "salt", 4096, 20));
+        assertEquals(
+            "3d2eec4fe41c849b80c8d83662c0e44a8b291a964cf2f07038",
+            pbkdf2(
+                "passwordPASSWORDpassword",
+                "saltSALTsaltSALTsaltSALTsaltSALTsalt",
+                4096,
+                25));
+        assertEquals(
+            "56fa6aa75548099dcc37d7f03425e0c3",
+            pbkdf2("pass\0word", "sa\0lt", 4096, 16));
+    }
+
+    public void testRandomMessages() throws Exception {
+        Random random = new Random(System.currentTimeMillis());
+        Mac mac = Mac.getInstance("HmacSHA1");
+        for (int i = 0; i < 50; i++) {
+            byte[] key = new byte[random.nextInt(100) + 1];
+            byte[] message = new byte[random.nextInt(300)];
+            random.nextBytes(key);
+            random.nextBytes(message);
+            mac.init(new SecretKeySpec(key, "HmacSHA1"));
+            byte[] control = mac.doFinal(message);
+            Sha1Digest code = HmacSHA1.mac(key, message);
+            assertTrue(Arrays.equals(control, code.toByteArray()));
+        }
+    }
+
+}
@@ -3,6 +3,8 @@
  */
 package org.ubimix.commons.digests;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.security.MessageDigest;
 import java.util.Random;
 
@@ -98,6 +100,49 @@ public class SHA1Test extends TestCase {
         return test;
     }
 
+    public void testBulkUpdate() throws Exception {
+        Random random = new Random(System.currentTimeMillis());
+        int[] sizes = { 0, 1, 63, 64, 65, 127, 128, 1000, 1024 * 100 + 7 };
+        for (int size : sizes) {
+            byte[] buf = new byte[size];
+            random.nextBytes(buf);
+            String control = toHex(fDigest.digest(buf));
+
+            // Split the array in randomly sized chunks
+            int pos = 0;
+            while (pos < buf.length) {
+                int len = Math.min(buf.length - pos, random.nextInt(200));
+                fSha.update(buf, pos, len);
+                pos += len;
+            }
+            assertEquals(control, fSha.getDigestString());
+
+            fSha.update(buf);
+            assertEquals(control, fSha.getDigestString());
+
+            Sha1Digest.Builder builder = Sha1Digest.builder();
+            builder.update(buf, 0, buf.length);
+            assertEquals(control, builder.build().toString());
+
+            ByteBuffer heap = ByteBuffer.wrap(buf);
+            DigestBuffers.update(fSha, heap);
+            assertEquals(control, fSha.getDigestString());
+            assertFalse(heap.hasRemaining());
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(size + 3);
+            direct.order(ByteOrder.LITTLE_ENDIAN);
+            direct.put(new byte[] { 1, 2, 3 });
+            direct.put(buf);
+            direct.flip();
+            // Unaligned start position and little-endian order
+            fSha.update(direct.get());
+            DigestBuffers.update(fSha, direct);
+            fDigest.update(new byte[] { 1, 2, 3 });
+            fDigest.update(buf);
+            assertEquals(toHex(fDigest.digest()), fSha.getDigestString());
+        }
+    }
+
     /**
      * @param size
      */
@@ -124,6 +169,34 @@ public class SHA1Test extends TestCase {
         // System.out.println(control + " - " + test);
         assertEquals(control, test);
 
+        // Check that block providers give the same result
+        fSha.update(new SHA1.ByteArrayProvider(buf));
+        test = fSha.getDigestString();
+        assertEquals(control, test);
+
+        // Block provider returning small chunks of random length
+        final Random chunks = new Random(size);
+        fSha.update(new SHA1.IBlockByteProvider() {
+            int fPos;
+
+            public int getNext() {
+                throw new UnsupportedOperationException();
+            }
+
+            public int read(byte[] dst, int off, int len) {
+                if (fPos >= buf.length) {
+                    return -1;
+                }
+                len = Math.min(len, 1 + chunks.nextInt(100));
+                len = Math.min(len, buf.length - fPos);
+                System.arraycopy(buf, fPos, dst, off, len);
+                fPos += len;
+                return len;
+            }
+        });
+        test = fSha.getDigestString();
+        assertEquals(control, test);
+
         // Check that byte-by-byte update method gives the same result
         for (int i = 0; i < buf.length; i++) {
             fSha.update(buf[i]);
@@ -140,6 +213,32 @@ public class SHA1Test extends TestCase {
         testByteSequence(1024 * 1024);
     }
 
+    public void testHashers() throws Exception {
+        String[] messages = { "", "abc", "Мама мыла раму", "a\u00e9\u4e2d" };
+        for (String msg : messages) {
+            String control = toHex(fDigest.digest(msg.getBytes("UTF-8")));
+            assertEquals(control, Sha1Hashers.digest(msg).toString());
+            assertEquals(control, Sha1Hashers.digestString(msg));
+            byte[] array = msg.getBytes("UTF-8");
+            assertEquals(control, Sha1Hashers.digest(array).toString());
+        }
+
+        // The thread-local instance is re-used and reset
+        SHA1 first = Sha1Hashers.get();
+        first.update("garbage");
+        SHA1 second = Sha1Hashers.get();
+        assertSame(first, second);
+        assertEquals("da39a3ee5e6b4b0d3255bfef95601890afd80709", second
+            .getDigestString());
+
+        // Reset discards all previously added bytes
+        fSha.update("garbage");
+        fSha.reset();
+        fSha.update("abc");
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", fSha
+            .getDigestString());
+    }
+
     public void testKnownHashes() {
         sha1("", "da39a3ee5e6b4b0d3255bfef95601890afd80709");
         sha1("!", "0ab8318acaf6e678dd02e2b5c343ed41111b393d");
@@ -238,6 +337,168 @@ public class SHA1Test extends TestCase {
         sha1("~", "fb3c6e4de85bd9eae26fdc63e75f10a7f39e850e");
     }
 
+    public void testLongMessages() throws Exception {
+        // A state of a message longer than 8 GiB (2^31 words) with three
+        // bytes in the current block
+        long length = (1L << 33) + 64 * 5 + 3;
+        int[] chaining = {
+            0x01234567,
+            0x89ABCDEF,
+            0xFEDCBA98,
+            0x76543210,
+            0xF0E1D2C3 };
+        Sha1State state = new Sha1State(
+            chaining.clone(),
+            new int[] { 0x61626300 },
+            length);
+        byte[] tail = new byte[200];
+        new Random(length).nextBytes(tail);
+
+        // Pad the rest of the message "by hand" and compress it directly
+        long total = length + tail.length;
+        int size = 3 + tail.length + 1 + 8;
+        size = (size + 63) / 64 * 64;
+        byte[] message = new byte[size];
+        message[0] = 'a';
+        message[1] = 'b';
+        message[2] = 'c';
+        System.arraycopy(tail, 0, message, 3, tail.length);
+        message[3 + tail.length] = (byte) 0x80;
+        long bits = total << 3;
+        for (int i = 0; i < 8; i++) {
+            message[size - 1 - i] = (byte) (bits >>> (8 * i));
+        }
+        int[] control = chaining.clone();
+        int[] w = new int[80];
+        for (int pos = 0; pos < size; pos += 64) {
+            ByteBuffer.wrap(message, pos, 64).asIntBuffer().get(w, 0, 16);
+            Sha1Kernel.compress(control, w);
+        }
+
+        fSha.setState(state);
+        fSha.update(tail, 0, 100);
+        for (int i = 100; i < tail.length; i++) {
+            fSha.update(tail[i]);
+        }
+        assertEquals(total, fSha.getLength());
+        assertEquals(SHA1.getDigestAsString(control), fSha.getDigestString());
+
+        fSha.setState(state);
+        fSha.update(tail);
+        fSha.update(tail);
+        String first = fSha.getDigestString();
+        fSha.setState(state);
+        for (int i = 0; i < 2; i++) {
+            for (byte b : tail) {
+                fSha.update(b);
+            }
+        }
+        assertEquals(first, fSha.getDigestString());
+    }
+
+    public void testMetrics() throws Exception {
+        Sha1Metrics metrics = new Sha1Metrics();
+        metrics.recordBlocks(2, 100);
+        metrics.recordDigest(70);
+        Sha1Metrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(2, snapshot.getBlocks());
+        assertEquals(70, snapshot.getFinishedBytes());
+        assertEquals(128, snapshot.getHashedBytes());
+        assertEquals(1, snapshot.getDigests());
+        assertEquals(100, snapshot.getTimeNanos());
+        metrics.reset();
+        assertEquals(0, metrics.getBlocks());
+
+        Sha1Metrics.Snapshot before = Sha1Metrics.getSnapshot();
+        Sha1Hashers.digest(new byte[100]);
+        Sha1Metrics.Snapshot after = Sha1Metrics.getSnapshot();
+        int expected = Sha1Metrics.ENABLED ? 1 : 0;
+        assertEquals(expected, after.getDigests() - before.getDigests());
+        assertEquals(100 * expected, after.getFinishedBytes()
+            - before.getFinishedBytes());
+        assertEquals(2 * expected, after.getBlocks() - before.getBlocks());
+    }
+
+    public void testStates() throws Exception {
+        Random random = new Random(System.currentTimeMillis());
+        byte[] buf = new byte[300];
+        random.nextBytes(buf);
+        String control = toHex(fDigest.digest(buf));
+        for (int split = 0; split <= 130; split++) {
+            SHA1 first = new SHA1();
+            first.update(buf, 0, split);
+            Sha1State state = first.getState();
+            assertEquals(split, state.getLength());
+
+            // Serialize the state and resume hashing in a new digest
+            byte[] array = state.toBytes();
+            assertEquals(29 + split % 64, array.length);
+            SHA1 second = new SHA1(Sha1State.fromBytes(array));
+            second.update(buf, split, buf.length - split);
+            assertEquals(control, second.getDigestString());
+
+            // The snapshot can be forked many times
+            fSha.setState(state);
+            fSha.update(buf, split, buf.length - split);
+            assertEquals(control, fSha.getDigestString());
+
+            // Digest of the prefix
+            fDigest.update(buf, 0, split);
+            String prefix = toHex(fDigest.digest());
+            assertEquals(prefix, state.getDigest().toString());
+            Sha1Digest.Builder builder = Sha1Digest.builder(state);
+            assertEquals(prefix, builder.build().toString());
+            builder.update(buf, split, buf.length - split);
+            assertEquals(control, builder.build().toString());
+            assertEquals(control, builder.build().toString());
+            assertEquals(buf.length, builder.getState().getLength());
+        }
+        try {
+            Sha1State.fromBytes(new byte[10]);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testStrings() throws Exception {
+        String[] messages = {
+            "",
+            "abcd",
+            "abcdefghijklmnopqrstuvwxyz0123456789",
+            "\u00e9t\u00e9 \u00e0 Paris",
+            "Мама мыла раму",
+            "a\u4e2d\u6587bcdefgh",
+            "\ud83d\ude00 smile \ud83d\ude00\ud83d\ude01",
+            "unpaired \ud83d high",
+            "unpaired \ude00 low",
+            "trailing high \ud83d" };
+        for (String msg : messages) {
+            String control = toHex(fDigest.digest(msg.getBytes("UTF-8")));
+            fSha.update(msg);
+            assertEquals(msg, control, fSha.getDigestString());
+
+            fSha.update(new StringBuilder(msg));
+            assertEquals(msg, control, fSha.getDigestString());
+
+            char[] array = ("xx" + msg + "yy").toCharArray();
+            fSha.update(array, 2, msg.length());
+            assertEquals(msg, control, fSha.getDigestString());
+
+            fSha.update(new SHA1.StringByteProvider(msg));
+            assertEquals(msg, control, fSha.getDigestString());
+
+            String wrapped = "[" + msg + "]";
+            fSha.update(wrapped, 1, wrapped.length() - 1);
+            assertEquals(msg, control, fSha.getDigestString());
+
+            // Unaligned prefix
+            control = toHex(fDigest.digest(("x" + msg).getBytes("UTF-8")));
+            fSha.update('x');
+            fSha.update(msg);
+            assertEquals(msg, control, fSha.getDigestString());
+        }
+    }
+
     private String toHex(byte[] array) {
         StringBuffer buf = new StringBuffer();
         for (byte element : array) {
@@ -0,0 +1,146 @@
+/**
+ * 
+ */
+package org.ubimix.commons.digests;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+/**
+ * @author kotelnikov
+ */
+public class Sha1BatchTest extends TestCase {
+
+    /**
+     * @param name
+     */
+    public Sha1BatchTest(String name) {
+        super(name);
+    }
+
+    private List<Object> newInputs(int count) {
+        List<Object> inputs = new ArrayList<Object>();
+        for (int i = 0; i < count; i++) {
+            String str = "Message " + i;
+            switch (i % 3) {
+                case 0:
+                    inputs.add(str);
+                    break;
+                case 1:
+                    inputs.add(Sha1BatchTest.toBytes(str));
+                    break;
+                case 2:
+                    inputs.add(ByteBuffer.wrap(Sha1BatchTest.toBytes(str)));
+                    break;
+            }
+        }
+        return inputs;
+    }
+
+    public void testFiles() throws Exception {
+        File file = File.createTempFile("batch", ".txt");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(toBytes("abc"));
+            out.close();
+            List<Object> inputs = new ArrayList<Object>();
+            inputs.add(file);
+            inputs.add(file.toPath());
+            List<Sha1Digest> digests = Sha1Batch.builder().build().digest(
+                inputs);
+            assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", digests
+                .get(0)
+                .toString());
+            assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", digests
+                .get(1)
+                .toString());
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testListeners() throws Exception {
+        final List<Object> inputs = newInputs(1000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // Ordered notifications
+            final List<Integer> indexes = new ArrayList<Integer>();
+            Sha1Batch batch = Sha1Batch
+                .builder()
+                .executor(executor)
+                .parallelism(4)
+                .build();
+            batch.digest(inputs, new Sha1Batch.IDigestListener() {
+                public void onDigest(int index, Object input, Sha1Digest digest) {
+                    assertSame(inputs.get(index), input);
+                    assertEquals(Sha1Hashers.digest("Message " + index).toString(), digest
+                        .toString());
+                    indexes.add(index);
+                }
+            });
+            assertEquals(inputs.size(), indexes.size());
+            for (int i = 0; i < indexes.size(); i++) {
+                assertEquals(i, indexes.get(i).intValue());
+            }
+
+            // Unordered notifications
+            final List<Integer> unordered = Collections
+                .synchronizedList(new ArrayList<Integer>());
+            batch = Sha1Batch
+                .builder()
+                .executor(executor)
+                .parallelism(4)
+                .ordered(false)
+                .build();
+            batch.digest(inputs, new Sha1Batch.IDigestListener() {
+                public void onDigest(int index, Object input, Sha1Digest digest) {
+                    unordered.add(index);
+                }
+            });
+            Collections.sort(unordered);
+            assertEquals(indexes, unordered);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testOrderedResults() throws Exception {
+        List<Object> inputs = newInputs(10000);
+        List<Sha1Digest> digests = Sha1Batch.builder().build().digest(inputs);
+        assertEquals(inputs.size(), digests.size());
+        for (int i = 0; i < inputs.size(); i++) {
+            Sha1Digest control = Sha1Hashers.digest("Message " + i);
+            assertEquals(control.toString(), digests.get(i).toString());
+        }
+        assertTrue(Sha1Batch
+            .builder()
+            .build()
+            .digest(inputs.subList(0, 0))
+            .isEmpty());
+    }
+
+    public void testUnsupportedInputs() throws Exception {
+        try {
+            Sha1Batch.builder().build().digest(Collections.singletonList(1));
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    private static byte[] toBytes(String str) {
+        try {
+            return str.getBytes("UTF-8");
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
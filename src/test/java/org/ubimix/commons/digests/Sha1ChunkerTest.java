@@ -0,0 +1,138 @@
+/**
+ * 
+ */
+package org.ubimix.commons.digests;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.ubimix.commons.digests.Sha1Chunker.Chunk;
+
+/**
+ * @author kotelnikov
+ */
+public class Sha1ChunkerTest extends TestCase {
+
+    /**
+     * @param name
+     */
+    public Sha1ChunkerTest(String name) {
+        super(name);
+    }
+
+    private void checkChunks(
+        Sha1Chunker chunker,
+        byte[] data,
+        List<Chunk> list) {
+        long offset = 0;
+        for (int i = 0; i < list.size(); i++) {
+            Chunk chunk = list.get(i);
+            assertEquals(offset, chunk.getOffset());
+            int len = chunk.getLength();
+            assertTrue(len <= chunker.getMaxSize());
+            if (i < list.size() - 1) {
+                assertTrue(len >= chunker.getMinSize());
+            }
+            Sha1Digest control = Sha1Digest
+                .builder()
+                .update(data, (int) offset, len)
+                .build();
+            assertEquals(control, chunk.getDigest());
+            offset += len;
+        }
+        assertEquals(data.length, offset);
+    }
+
+    public void testBoundaries() throws IOException {
+        Sha1Chunker chunker = Sha1Chunker.builder().averageSize(1024).build();
+        byte[] data = new byte[200 * 1024];
+        new Random(5).nextBytes(data);
+        List<Chunk> list = chunker.split(new ByteArrayInputStream(data));
+        checkChunks(chunker, data, list);
+        assertTrue(list.size() > 100 && list.size() < 400);
+
+        // Chunks do not depend on the way the content is read
+        InputStream slow = new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 333));
+            }
+        };
+        assertEquals(list.toString(), chunker.split(slow).toString());
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data).flip();
+        assertEquals(list.toString(), chunker.split(direct).toString());
+        assertFalse(direct.hasRemaining());
+
+        // An insertion changes only the chunks around it
+        byte[] modified = new byte[data.length + 10];
+        System.arraycopy(data, 0, modified, 0, 5000);
+        System.arraycopy(data, 5000, modified, 5010, data.length - 5000);
+        List<Chunk> second = chunker.split(ByteBuffer.wrap(modified));
+        checkChunks(chunker, modified, second);
+        Set<Sha1Digest> digests = new HashSet<Sha1Digest>();
+        for (Chunk chunk : list) {
+            digests.add(chunk.getDigest());
+        }
+        int changed = 0;
+        for (Chunk chunk : second) {
+            if (!digests.contains(chunk.getDigest())) {
+                changed++;
+            }
+        }
+        assertTrue(changed > 0 && changed <= 3);
+
+        // Sequences without boundaries are split at the maximal size
+        byte[] zeros = new byte[20 * 1024];
+        List<Chunk> flat = chunker.split(ByteBuffer.wrap(zeros));
+        checkChunks(chunker, zeros, flat);
+        assertEquals(3, flat.size());
+        assertTrue(chunker.split(ByteBuffer.allocate(0)).isEmpty());
+    }
+
+    public void testSizes() throws IOException {
+        // Chunks of a fixed size
+        Sha1Chunker chunker = Sha1Chunker
+            .builder()
+            .averageSize(1024)
+            .minSize(1024)
+            .maxSize(1024)
+            .build();
+        byte[] zeros = new byte[5000];
+        List<Chunk> list = chunker.split(ByteBuffer.wrap(zeros));
+        checkChunks(chunker, zeros, list);
+        assertEquals(5, list.size());
+        assertEquals(1024, list.get(0).getLength());
+        assertEquals(5000 - 4 * 1024, list.get(4).getLength());
+
+        // No chunk is longer than the maximal size
+        byte[] data = new byte[100 * 1024];
+        new Random(7).nextBytes(data);
+        int[][] sizes = { { 1024, 1024 }, { 0, 1024 }, { 256, 2048 } };
+        for (int[] size : sizes) {
+            chunker = Sha1Chunker
+                .builder()
+                .averageSize(1024)
+                .minSize(size[0])
+                .maxSize(size[1])
+                .build();
+            checkChunks(chunker, data, chunker.split(ByteBuffer.wrap(data)));
+            InputStream slow = new ByteArrayInputStream(data) {
+                @Override
+                public synchronized int read(byte[] b, int off, int len) {
+                    return super.read(b, off, Math.min(len, 1000));
+                }
+            };
+            checkChunks(chunker, data, chunker.split(slow));
+        }
+    }
+
+}
@@ -0,0 +1,149 @@
+/**
+ * 
+ */
+package org.ubimix.commons.digests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+/**
+ * @author kotelnikov
+ */
+public class Sha1DigestSetTest extends TestCase {
+
+    /**
+     * @param name
+     */
+    public Sha1DigestSetTest(String name) {
+        super(name);
+    }
+
+    private Sha1Digest digest(int i) {
+        return Sha1Hashers.digest("digest-" + i);
+    }
+
+    public void testConcurrentAdd() throws Exception {
+        final Sha1DigestSet set = new Sha1DigestSet(100000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int t = 0; t < 4; t++) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() {
+                        // All threads add the same digests
+                        int added = 0;
+                        for (int i = 0; i < 50000; i++) {
+                            if (set.add(digest(i))) {
+                                added++;
+                            }
+                            assertTrue(set.contains(digest(i)));
+                        }
+                        return added;
+                    }
+                }));
+            }
+            int added = 0;
+            for (Future<Integer> result : results) {
+                added += result.get();
+            }
+            assertEquals(50000, added);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(50000, set.size());
+        assertFalse(set.contains(digest(50000)));
+    }
+
+    public void testFile() throws Exception {
+        File file = File.createTempFile("digests", ".bin");
+        file.delete();
+        try {
+            Sha1DigestSet set = new Sha1DigestSet(file, 5000);
+            for (int i = 0; i < 3000; i++) {
+                assertTrue(set.add(digest(i)));
+            }
+            assertTrue(set.add(0, 0, 0, 0, 0));
+            set.close();
+
+            set = new Sha1DigestSet(file, 5000);
+            assertEquals(3001, set.size());
+            assertTrue(set.contains(digest(2999)));
+            assertTrue(set.contains(0, 0, 0, 0, 0));
+            assertFalse(set.contains(digest(3000)));
+            assertFalse(set.add(digest(10)));
+            set.close();
+            try {
+                new Sha1DigestSet(file, 1000000);
+                fail();
+            } catch (IOException e) {
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testLoadFactor() {
+        // 64 segments of 4096 slots
+        Sha1DigestSet set = new Sha1DigestSet(100000);
+        assertEquals(100000, set.getCapacity());
+        // All these digests are in the first segment
+        for (int i = 1; i <= 3072; i++) {
+            assertTrue(set.add(0, i, i, 0, 1));
+        }
+        try {
+            set.add(0, 0, 0, 0, 2);
+            fail();
+        } catch (IllegalStateException e) {
+        }
+        assertTrue(set.add(-1, 0, 0, 0, 2));
+
+        // Random digests fit in the capacity
+        set = new Sha1DigestSet(20000);
+        for (int i = 0; i < 20000; i++) {
+            assertTrue(set.add(digest(i)));
+        }
+        assertEquals(20000, set.size());
+    }
+
+    public void testSet() {
+        Sha1DigestSet set = new Sha1DigestSet(1000);
+        assertEquals(1000, set.getCapacity());
+        assertFalse(set.contains(0, 0, 0, 0, 0));
+        assertTrue(set.add(0, 0, 0, 0, 0));
+        assertFalse(set.add(0, 0, 0, 0, 0));
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(set.add(digest(i)));
+        }
+        for (int i = 0; i < 1000; i++) {
+            Sha1Digest digest = digest(i);
+            assertFalse(set.add(digest));
+            assertTrue(set.contains(
+                digest.getWord(0),
+                digest.getWord(1),
+                digest.getWord(2),
+                digest.getWord(3),
+                digest.getWord(4)));
+            assertFalse(set.contains(digest(i + 1000)));
+        }
+        assertEquals(1001, set.size());
+
+        // Colliding slots are resolved by probing
+        Sha1DigestSet small = new Sha1DigestSet(10);
+        for (int i = 1; i <= 100; i++) {
+            assertTrue(small.add(i, 7, 0, 0, i));
+        }
+        for (int i = 1; i <= 100; i++) {
+            assertTrue(small.contains(i, 7, 0, 0, i));
+            assertFalse(small.contains(i, 7, 0, 1, i));
+        }
+    }
+
+}
@@ -0,0 +1,149 @@
+/**
+ * 
+ */
+package org.ubimix.commons.digests;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+/**
+ * @author kotelnikov
+ */
+public class Sha1DigestTest extends TestCase {
+
+    /**
+     * @param name
+     */
+    public Sha1DigestTest(String name) {
+        super(name);
+    }
+
+    private Sha1Digest digest(String str) {
+        return Sha1Digest.builder().update(str).build();
+    }
+
+    public void testAccessors() throws Exception {
+        byte[] control = MessageDigest.getInstance("SHA1").digest(
+            "abc".getBytes("UTF-8"));
+        Sha1Digest digest = digest("abc");
+        assertTrue(Arrays.equals(control, digest.toByteArray()));
+
+        byte[] array = new byte[25];
+        assertEquals(23, digest.getBytes(array, 3));
+        assertTrue(Arrays.equals(control, Arrays.copyOfRange(array, 3, 23)));
+        assertEquals(digest, Sha1Digest.fromBytes(array, 3));
+
+        int[] bytes = digest.getDigest();
+        for (int i = 0; i < control.length; i++) {
+            assertEquals(control[i] & 0xFF, bytes[i]);
+        }
+        assertEquals(0xa9993e36, digest.getWord(0));
+        assertEquals(0x9cd0d89d, digest.getWord(4));
+        assertEquals(0xa9993e364706816aL, digest.getLong(0));
+        assertEquals(0xba3e25717850c26cL, digest.getLong(1));
+        int[] words = digest.getInternalDigest();
+        assertEquals(digest, Sha1Digest.fromWords(
+            words[0],
+            words[1],
+            words[2],
+            words[3],
+            words[4]));
+
+        ByteBuffer buf = ByteBuffer.allocate(40);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        DigestBuffers.put(buf, digest);
+        DigestBuffers.put(buf, digest("x"));
+        assertTrue(Arrays.equals(control, Arrays.copyOf(buf.array(), 20)));
+        buf.flip();
+        assertEquals(digest, DigestBuffers.get(buf));
+        assertEquals(digest("x"), DigestBuffers.get(buf));
+    }
+
+    public void testEncodings() {
+        Sha1Digest digest = digest("abc");
+        String hex = "a9993e364706816aba3e25717850c26c9cd0d89d";
+        assertEquals(hex, digest.toString());
+        assertEquals(hex, DigestEncoding.toHex(digest));
+        char[] array = new char[42];
+        assertEquals(41, DigestEncoding.encodeHex(digest, array, 1));
+        assertEquals(hex, new String(array, 1, 40));
+        assertEquals("[" + hex, DigestEncoding.appendHex(
+            new StringBuilder("["),
+            digest).toString());
+        assertEquals(digest, DigestEncoding.parseHex(hex));
+        assertEquals(digest, DigestEncoding.parseHex(hex.toUpperCase()));
+        assertEquals(digest, DigestEncoding.parseHex("<" + hex + ">", 1, 41));
+
+        assertEquals("qZk+NkcGgWq6PiVxeFDCbJzQ2J0=", DigestEncoding.toBase64(
+            digest,
+            false));
+        assertEquals("qZk-NkcGgWq6PiVxeFDCbJzQ2J0", DigestEncoding.toBase64(
+            digest,
+            true));
+        assertEquals(digest, DigestEncoding
+            .parseBase64("qZk+NkcGgWq6PiVxeFDCbJzQ2J0="));
+        assertEquals(digest, DigestEncoding
+            .parseBase64("qZk-NkcGgWq6PiVxeFDCbJzQ2J0"));
+        Sha1Digest ten = digest("10");
+        assertEquals("sdV4ERHYT3s/5FoIUuWXWM16h+U=", DigestEncoding.toBase64(
+            ten,
+            false));
+        assertEquals(ten, DigestEncoding
+            .parseBase64("sdV4ERHYT3s_5FoIUuWXWM16h-U"));
+
+        assertEquals("VGMT4NSHA2AWVOR6EVYXQUGCNSONBWE5", DigestEncoding
+            .toBase32(digest));
+        assertEquals(digest, DigestEncoding
+            .parseBase32("VGMT4NSHA2AWVOR6EVYXQUGCNSONBWE5"));
+        assertEquals(digest, DigestEncoding
+            .parseBase32("vgmt4nsha2awvor6evyxqugcnsonbwe5"));
+        assertEquals(digest(""), DigestEncoding
+            .parseBase32("3I42H3S6NNFQ2MSVX7XZKYAYSCX5QBYJ"));
+
+        String[] bad = { "", hex + "0", hex.substring(1) + "g" };
+        for (String str : bad) {
+            try {
+                DigestEncoding.parseHex(str);
+                fail();
+            } catch (IllegalArgumentException e) {
+            }
+        }
+        try {
+            DigestEncoding.parseBase64("qZk+NkcGgWq6PiVxeFDCbJzQ2J!=");
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testValues() {
+        Sha1Digest first = digest("abc");
+        Sha1Digest second = Sha1Hashers.digest("abc");
+        assertNotSame(first, second);
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+        assertEquals(0, first.compareTo(second));
+        assertFalse(first.equals(digest("abd")));
+
+        Map<Sha1Digest, String> map = new HashMap<Sha1Digest, String>();
+        map.put(first, "abc");
+        assertEquals("abc", map.get(second));
+
+        // Digests are ordered as unsigned byte sequences, like hex strings
+        TreeSet<Sha1Digest> digests = new TreeSet<Sha1Digest>();
+        TreeSet<String> strings = new TreeSet<String>();
+        for (int i = 0; i < 100; i++) {
+            Sha1Digest digest = digest("" + i);
+            digests.add(digest);
+            strings.add(digest.toString());
+        }
+        assertEquals(strings.toString(), digests.toString());
+    }
+
+}
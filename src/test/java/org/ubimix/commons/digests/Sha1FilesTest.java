@@ -0,0 +1,186 @@
+/**
+ * 
+ */
+package org.ubimix.commons.digests;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * @author kotelnikov
+ */
+public class Sha1FilesTest extends TestCase {
+
+    private File fFile;
+
+    /**
+     * @param name
+     */
+    public Sha1FilesTest(String name) {
+        super(name);
+    }
+
+    private byte[] newContent(int size) throws Exception {
+        byte[] buf = new byte[size];
+        new Random(size).nextBytes(buf);
+        FileOutputStream out = new FileOutputStream(fFile);
+        try {
+            out.write(buf);
+        } finally {
+            out.close();
+        }
+        return buf;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        fFile = File.createTempFile("sha1", ".bin");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        fFile.delete();
+    }
+
+    public void testChannels() throws Exception {
+        byte[] buf = newContent(1024 * 1024 + 13);
+        String control = toHex(MessageDigest.getInstance("SHA1").digest(buf));
+        assertEquals(control, Sha1Files
+            .ofChannel(Channels.newChannel(new ByteArrayInputStream(buf)))
+            .toString());
+
+        // Hashing starts from the current position of the channel
+        FileChannel channel = FileChannel.open(
+            fFile.toPath(),
+            StandardOpenOption.READ);
+        try {
+            channel.position(100);
+            MessageDigest digest = MessageDigest.getInstance("SHA1");
+            digest.update(buf, 100, buf.length - 100);
+            assertEquals(toHex(digest.digest()), Sha1Files
+                .ofChannel(channel)
+                .toString());
+            assertEquals(buf.length, channel.position());
+        } finally {
+            channel.close();
+        }
+    }
+
+    public void testFiles() throws Exception {
+        int[] sizes = { 0, 1, 64, 1000, 3 * 4096 + 17 };
+        for (int size : sizes) {
+            byte[] buf = newContent(size);
+            String control = toHex(MessageDigest
+                .getInstance("SHA1")
+                .digest(buf));
+            assertEquals(control, Sha1Files.ofFile(fFile).toString());
+            assertEquals(control, Sha1Files.ofFile(fFile.toPath()).toString());
+
+            // Small windows to check transitions between mapped regions
+            FileChannel channel = FileChannel.open(
+                fFile.toPath(),
+                StandardOpenOption.READ);
+            try {
+                SHA1 digest = Sha1Files.update(new SHA1(), channel, 4096);
+                assertEquals(size, digest.getLength());
+                assertEquals(control, digest.getDigestString());
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    public void testTreeHash() throws Exception {
+        int chunkSize = 4096;
+        int[] sizes = { 0, 100, chunkSize, 7 * chunkSize + 100 };
+        for (int size : sizes) {
+            byte[] buf = newContent(size);
+            Sha1TreeHash.Result result = Sha1TreeHash
+                .builder()
+                .chunkSize(chunkSize)
+                .parallelism(3)
+                .build()
+                .digest(fFile);
+            assertEquals(size, result.getLength());
+            List<Sha1Digest> chunks = result.getChunkDigests();
+            assertEquals(Math.max(1, (size + chunkSize - 1) / chunkSize), chunks
+                .size());
+
+            // Leaves and the tree calculated sequentially
+            List<Sha1Digest> level = new ArrayList<Sha1Digest>();
+            for (int i = 0; i < chunks.size(); i++) {
+                int len = Math.min(chunkSize, size - i * chunkSize);
+                SHA1 digest = new SHA1();
+                digest.update(0);
+                digest.update(buf, i * chunkSize, len);
+                Sha1Digest leaf = Sha1Digest.fromBytes(toBytes(digest
+                    .getDigest()), 0);
+                assertEquals(leaf, chunks.get(i));
+                level.add(leaf);
+            }
+            while (level.size() > 1) {
+                List<Sha1Digest> next = new ArrayList<Sha1Digest>();
+                for (int i = 0; i < level.size(); i += 2) {
+                    if (i + 1 < level.size()) {
+                        next.add(Sha1Digest
+                            .builder()
+                            .update(1)
+                            .update(level.get(i).toByteArray())
+                            .update(level.get(i + 1).toByteArray())
+                            .build());
+                    } else {
+                        next.add(level.get(i));
+                    }
+                }
+                level = next;
+            }
+            assertEquals(level.get(0), result.getRoot());
+            assertEquals(result.getRoot(), Sha1TreeHash.getRoot(chunks));
+        }
+
+        // The number of chunks of a large (sparse) file does not fit in an
+        // integer
+        RandomAccessFile file = new RandomAccessFile(fFile, "rw");
+        try {
+            file.setLength(3L << 30);
+            Sha1TreeHash.builder().chunkSize(1).build().digest(
+                file.getChannel());
+            fail();
+        } catch (IllegalArgumentException e) {
+        } finally {
+            file.close();
+        }
+    }
+
+    private static byte[] toBytes(int[] array) {
+        byte[] result = new byte[array.length];
+        for (int i = 0; i < array.length; i++) {
+            result[i] = (byte) array[i];
+        }
+        return result;
+    }
+
+    private String toHex(byte[] array) {
+        StringBuffer buf = new StringBuffer();
+        for (byte element : array) {
+            String str = Integer.toHexString(element & 0xFF);
+            if (str.length() < 2) {
+                buf.append('0');
+            }
+            buf.append(str);
+        }
+        return buf.toString();
+    }
+
+}
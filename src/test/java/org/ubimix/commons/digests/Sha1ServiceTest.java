@@ -0,0 +1,207 @@
+/**
+ * 
+ */
+package org.ubimix.commons.digests;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * @author kotelnikov
+ */
+public class Sha1ServiceTest extends TestCase {
+
+    /**
+     * @param name
+     */
+    public Sha1ServiceTest(String name) {
+        super(name);
+    }
+
+    public void testLimits() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        Sha1Service service = Sha1Service
+            .builder()
+            .maxJobs(2)
+            .bufferSize(1024)
+            .maxBufferedBytes(1024)
+            .build();
+        try {
+            List<CompletableFuture<Sha1Digest>> results;
+            results = new ArrayList<CompletableFuture<Sha1Digest>>();
+            for (int i = 0; i < 5; i++) {
+                // A slow client
+                InputStream input = new ByteArrayInputStream(new byte[10]) {
+                    @Override
+                    public synchronized int read(byte[] b, int off, int len) {
+                        try {
+                            latch.await();
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                        return super.read(b, off, len);
+                    }
+                };
+                results.add(service.submit(input));
+            }
+            // Jobs become active and take buffers after they leave the queue
+            long deadline = System.currentTimeMillis() + 5000;
+            Sha1Service.Stats stats = service.getStats();
+            while ((stats.getQueued() != 3
+                || stats.getActive() != 2
+                || stats.getBufferedBytes() != 1024)
+                && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+                stats = service.getStats();
+            }
+            assertEquals(3, stats.getQueued());
+            assertEquals(2, stats.getActive());
+            assertEquals(1024, stats.getBufferedBytes());
+            latch.countDown();
+            Sha1Digest control = Sha1Hashers.digest(new byte[10]);
+            for (CompletableFuture<Sha1Digest> result : results) {
+                assertEquals(control, result.get(5, TimeUnit.SECONDS));
+            }
+            stats = service.getStats();
+            assertEquals(5, stats.getCompleted());
+            assertEquals(0, stats.getQueued());
+            assertEquals(0, stats.getActive());
+            assertEquals(0, stats.getBufferedBytes());
+            assertTrue(stats.getMaxLatencyNanos() > 0);
+        } finally {
+            service.close();
+        }
+    }
+
+    public void testNonBlockingChannel() throws Exception {
+        Pipe pipe = Pipe.open();
+        Sha1Service service = Sha1Service.builder().build();
+        try {
+            pipe.source().configureBlocking(false);
+            try {
+                service.submit(pipe.source());
+                fail();
+            } catch (IllegalArgumentException e) {
+            }
+        } finally {
+            service.close();
+            pipe.source().close();
+            pipe.sink().close();
+        }
+    }
+
+    public void testQueueLimit() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        Sha1Service service = Sha1Service
+            .builder()
+            .maxJobs(1)
+            .maxQueued(1)
+            .build();
+        try {
+            List<CompletableFuture<Sha1Digest>> results;
+            results = new ArrayList<CompletableFuture<Sha1Digest>>();
+            for (int i = 0; i < 3; i++) {
+                // A slow client
+                InputStream input = new ByteArrayInputStream(new byte[10]) {
+                    @Override
+                    public synchronized int read(byte[] b, int off, int len) {
+                        try {
+                            latch.await();
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                        return super.read(b, off, len);
+                    }
+                };
+                results.add(service.submit(input));
+                // The first job leaves the queue when it starts
+                long deadline = System.currentTimeMillis() + 5000;
+                while (service.getStats().getActive() != 1
+                    && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+            }
+            assertEquals(1, service.getStats().getQueued());
+            try {
+                results.get(2).get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+            Thread.sleep(20);
+            latch.countDown();
+            Sha1Digest control = Sha1Hashers.digest(new byte[10]);
+            assertEquals(control, results.get(0).get(5, TimeUnit.SECONDS));
+            assertEquals(control, results.get(1).get(5, TimeUnit.SECONDS));
+            Sha1Service.Stats stats = service.getStats();
+            assertEquals(2, stats.getCompleted());
+            assertEquals(0, stats.getFailed());
+            assertEquals(1, stats.getRejected());
+            assertEquals(0, stats.getQueued());
+            // Rejected jobs do not lower the average latency
+            assertTrue(stats.getAverageLatencyNanos()
+                >= TimeUnit.MILLISECONDS.toNanos(10));
+
+            // The queue accepts new jobs again
+            InputStream input = new ByteArrayInputStream(new byte[10]);
+            assertEquals(control, service.submit(input).get(
+                5,
+                TimeUnit.SECONDS));
+        } finally {
+            service.close();
+        }
+    }
+
+    public void testSubmit() throws Exception {
+        byte[] content = new byte[300000];
+        new Random(3).nextBytes(content);
+        Sha1Digest control = Sha1Hashers.digest(content);
+        Sha1Service service = Sha1Service.builder().build();
+        try {
+            assertEquals(control, service.submit(
+                new ByteArrayInputStream(content)).get());
+            assertEquals(control, service.submit(
+                Channels.newChannel(new ByteArrayInputStream(content))).get());
+            ByteBuffer first = ByteBuffer.wrap(content, 0, 1000);
+            ByteBuffer second = ByteBuffer.allocateDirect(content.length);
+            second.put(content).position(1000);
+            assertEquals(control, service
+                .submit(Arrays.asList(first, second))
+                .get());
+            assertEquals(1000, second.position());
+
+            InputStream failing = new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    throw new IOException("Failure");
+                }
+            };
+            try {
+                service.submit(failing).get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+            assertEquals(3, service.getStats().getCompleted());
+            assertEquals(1, service.getStats().getFailed());
+        } finally {
+            service.close();
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+/**
+ * 
+ */
+package org.ubimix.commons.digests;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import junit.framework.TestCase;
+
+import org.ubimix.commons.digests.SHA1.ByteArrayProvider;
+import org.ubimix.commons.digests.SHA1.StringByteProvider;
+
+/**
+ * @author kotelnikov
+ */
+public class XXHash64Test extends TestCase {
+
+    /**
+     * @param name
+     */
+    public XXHash64Test(String name) {
+        super(name);
+    }
+
+    public void testInputs() throws Exception {
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 7 % 251);
+        }
+        long control = 0x023fd2ed1ff957d5L;
+        assertEquals(control, XXHash64.hash(data));
+        assertEquals(0xf91698f761c39c92L, new XXHash64(12345)
+            .update(data)
+            .getValue());
+
+        // Results do not depend on the way bytes are added
+        for (int split = 0; split < 70; split++) {
+            XXHash64 hash = new XXHash64();
+            hash.update(data, 0, split);
+            assertEquals(split, hash.getLength());
+            for (int i = split; i < split + 5 && i < data.length; i++) {
+                hash.update(data[i]);
+            }
+            hash.update(data, split + 5, data.length - split - 5);
+            assertEquals(control, hash.getValue());
+        }
+        assertEquals(control, new XXHash64().update(
+            new ByteArrayProvider(data)).getValue());
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length + 3);
+        for (ByteOrder order : new ByteOrder[] {
+            ByteOrder.BIG_ENDIAN,
+            ByteOrder.LITTLE_ENDIAN }) {
+            direct.clear();
+            direct.order(order).put(data, 0, 3).put(data).flip();
+            direct.position(3);
+            assertEquals(control, DigestBuffers
+                .update(new XXHash64(), direct)
+                .getValue());
+            assertFalse(direct.hasRemaining());
+            // Unaligned updates
+            direct.rewind();
+            XXHash64 hash = new XXHash64().update(data, 0, 1);
+            DigestBuffers.update(hash, direct);
+            XXHash64 expected = new XXHash64()
+                .update(data, 0, 1)
+                .update(data, 0, 3)
+                .update(data);
+            assertEquals(expected.getValue(), hash.getValue());
+        }
+
+        // The value is not changed by the getValue call
+        XXHash64 hash = new XXHash64().update(data, 0, 100);
+        hash.getValue();
+        hash.update(data, 100, 900);
+        assertEquals(control, hash.getValue());
+        hash.reset();
+        assertEquals(0xef46db3751d8e999L, hash.getValue());
+    }
+
+    public void testStrings() throws Exception {
+        assertEquals(0xef46db3751d8e999L, XXHash64.hash(""));
+        assertEquals(0xd24ec4f1a98c6e5bL, XXHash64.hash("a"));
+        assertEquals(0x44bc2cf5ad770999L, XXHash64.hash("abc"));
+        String str = "Привет, "
+            + "мир! 😀";
+        assertEquals(0x809d6e39e875042bL, XXHash64.hash(str));
+        assertEquals(XXHash64.hash(str.getBytes("UTF-8")), XXHash64.hash(str));
+        char[] chars = ("[" + str + "]").toCharArray();
+        assertEquals(XXHash64.hash(str), new XXHash64().update(
+            chars,
+            1,
+            chars.length - 2).getValue());
+        assertEquals(XXHash64.hash(str), new XXHash64().update(
+            new StringBuilder(str)).getValue());
+        assertEquals(XXHash64.hash(str), new XXHash64().update(
+            new StringByteProvider(str)).getValue());
+        assertEquals(XXHash64.hash("a?b"), XXHash64.hash("a\uD800b"));
+
+        // ASCII runs packed in words at all alignments of the stripe
+        String text = "The quick brown fox jumps over the lazy dog; "
+            + "\u00e9t\u00e9, \u4e2d\u6587 and \ud83d\ude00 - 0123456789";
+        for (int i = 0; i < 8; i++) {
+            String msg = "abcdefg".substring(0, i) + text + text;
+            assertEquals(msg, XXHash64.hash(msg.getBytes("UTF-8")), XXHash64
+                .hash(msg));
+        }
+    }
+
+}
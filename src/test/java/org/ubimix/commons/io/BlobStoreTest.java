@@ -0,0 +1,149 @@
+/**
+ * 
+ */
+package org.ubimix.commons.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import org.ubimix.commons.digests.Sha1Digest;
+import org.ubimix.commons.digests.Sha1Hashers;
+
+/**
+ * @author kotelnikov
+ */
+public class BlobStoreTest extends TestCase {
+
+    private File fDir;
+
+    /**
+     * @param name
+     */
+    public BlobStoreTest(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        fDir = File.createTempFile("blobs", "");
+        fDir.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        IOUtil.delete(fDir);
+    }
+
+    public void testStore() throws Exception {
+        final BlobStore store = new BlobStore(fDir);
+        final byte[] content = new byte[100000];
+        new Random(1).nextBytes(content);
+        Sha1Digest control = Sha1Hashers.digest(content);
+        assertFalse(store.contains(control));
+
+        Sha1Digest digest = store.put(new ByteArrayInputStream(content));
+        assertEquals(control, digest);
+        assertTrue(store.contains(digest));
+        String hex = digest.toString();
+        File file = new File(new File(fDir, hex.substring(0, 2)), hex
+            .substring(2));
+        assertEquals(file, store.getFile(digest));
+        assertEquals(content.length, store.getLength(digest));
+
+        // Existing blobs are not written again
+        long modified = file.lastModified() - 10000;
+        file.setLastModified(modified);
+        assertEquals(control, store.put(content));
+        assertEquals(modified, file.lastModified());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(content.length, store.transferTo(digest, Channels
+            .newChannel(out)));
+        assertTrue(Arrays.equals(content, out.toByteArray()));
+        WritableByteChannel full = new WritableByteChannel() {
+            public void close() {
+            }
+
+            public boolean isOpen() {
+                return true;
+            }
+
+            public int write(ByteBuffer src) {
+                return 0;
+            }
+        };
+        try {
+            store.transferTo(digest, full);
+            fail();
+        } catch (IOException e) {
+        }
+        Pipe pipe = Pipe.open();
+        try {
+            pipe.sink().configureBlocking(false);
+            store.transferTo(digest, pipe.sink());
+            fail();
+        } catch (IllegalArgumentException e) {
+        } finally {
+            pipe.sink().close();
+            pipe.source().close();
+        }
+
+        // Blobs truncated by a crash are replaced
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(10);
+        raf.close();
+        // Damaged files are not detected by contains()
+        assertTrue(store.contains(digest));
+        assertEquals(control, store.put(content));
+        assertEquals(content.length, store.getLength(digest));
+        raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        raf.close();
+        assertEquals(control, store.put(new ByteArrayInputStream(content)));
+        assertEquals(content.length, store.getLength(digest));
+
+        // Concurrent writers of the same blob
+        store.delete(digest);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Sha1Digest>> results;
+            results = new ArrayList<Future<Sha1Digest>>();
+            for (int i = 0; i < 16; i++) {
+                final boolean stream = i % 2 == 0;
+                results.add(executor.submit(new Callable<Sha1Digest>() {
+                    public Sha1Digest call() throws Exception {
+                        return stream ? store.put(new ByteArrayInputStream(
+                            content)) : store.put(content);
+                    }
+                }));
+            }
+            for (Future<Sha1Digest> result : results) {
+                assertEquals(control, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(content.length, store.getLength(digest));
+        assertEquals(0, new File(fDir, "tmp").list().length);
+        assertTrue(store.delete(digest));
+        assertFalse(store.contains(digest));
+    }
+
+}
@@ -0,0 +1,100 @@
+/**
+ * 
+ */
+package org.ubimix.commons.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.ubimix.commons.digests.Sha1Digest;
+import org.ubimix.commons.digests.Sha1Hashers;
+
+/**
+ * @author kotelnikov
+ */
+public class DirectoryDigestTest extends TestCase {
+
+    private File fDir;
+
+    /**
+     * @param name
+     */
+    public DirectoryDigestTest(String name) {
+        super(name);
+    }
+
+    private File newTree(String name, boolean reverse) throws Exception {
+        File root = new File(fDir, name);
+        for (int i = 0; i < 40; i++) {
+            int n = reverse ? 39 - i : i;
+            File dir = new File(root, "d" + (n % 4) + "/s" + (n % 3));
+            dir.mkdirs();
+            IOUtil.writeString(new File(dir, "f" + n + ".txt"), "File " + n);
+        }
+        new File(root, "empty").mkdirs();
+        return root;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        fDir = File.createTempFile("tree", "");
+        fDir.delete();
+        fDir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        IOUtil.delete(fDir);
+    }
+
+    public void testDigest() throws Exception {
+        File first = newTree("first", false);
+        DirectoryDigest.Result result = DirectoryDigest
+            .builder()
+            .build()
+            .digest(first);
+        Map<String, Sha1Digest> manifest = result.getManifest();
+        assertEquals(40, manifest.size());
+        assertEquals(Sha1Hashers.digest("File 5"), manifest.get("d1/s2/f5.txt"));
+        assertEquals("d0/s0/f0.txt", manifest.keySet().iterator().next());
+
+        // The result does not depend on the order of files and threads
+        File second = newTree("second", true);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (int parallelism = 1; parallelism < 5; parallelism++) {
+                DirectoryDigest digest = DirectoryDigest
+                    .builder()
+                    .executor(executor)
+                    .parallelism(parallelism)
+                    .build();
+                DirectoryDigest.Result r = digest.digest(second);
+                assertEquals(result.getRoot(), r.getRoot());
+                assertEquals(manifest, r.getManifest());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // Names and contents are hashed
+        DirectoryDigest digest = DirectoryDigest.builder().build();
+        new File(second, "d1/s2/f5.txt").renameTo(new File(
+            second,
+            "d1/s2/f5.bak"));
+        Sha1Digest renamed = digest.digest(second).getRoot();
+        assertFalse(renamed.equals(result.getRoot()));
+        IOUtil.writeString(new File(second, "d1/s2/f5.bak"), "File 6");
+        assertFalse(renamed.equals(digest.digest(second).getRoot()));
+        try {
+            digest.digest(new File(second, "missing"));
+            fail();
+        } catch (IOException e) {
+        }
+    }
+
+}
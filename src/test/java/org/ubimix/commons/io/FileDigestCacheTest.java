@@ -0,0 +1,155 @@
+/**
+ * 
+ */
+package org.ubimix.commons.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+import org.ubimix.commons.digests.Sha1Digest;
+import org.ubimix.commons.digests.Sha1Hashers;
+
+/**
+ * @author kotelnikov
+ */
+public class FileDigestCacheTest extends TestCase {
+
+    private File fDir;
+
+    /**
+     * @param name
+     */
+    public FileDigestCacheTest(String name) {
+        super(name);
+    }
+
+    private File newFile(String name, String content, long modified)
+        throws Exception {
+        File file = new File(fDir, name);
+        IOUtil.writeString(file, content);
+        file.setLastModified(modified);
+        return file;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        fDir = File.createTempFile("cache", "");
+        fDir.delete();
+        fDir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        IOUtil.delete(fDir);
+    }
+
+    public void testCache() throws Exception {
+        File index = new File(fDir, "index");
+        long old = System.currentTimeMillis() - 10000000;
+        File file = newFile("a.txt", "Hello", old);
+        Sha1Digest control = Sha1Hashers.digest("Hello");
+
+        FileDigestCache cache = new FileDigestCache(index);
+        assertEquals(control, cache.getDigest(file));
+        assertEquals(control, cache.getDigest(file));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        cache.close();
+        long recordSize = index.length() - 8;
+
+        // Unchanged files are not read: a modification keeping the size and
+        // the modification time is not visible
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.write('J');
+        raf.close();
+        file.setLastModified(old);
+        cache = new FileDigestCache(index, 1);
+        assertEquals(control, cache.getDigest(file));
+        assertEquals(0, cache.getMisses());
+
+        // A new modification time invalidates the entry
+        file.setLastModified(old + 1000);
+        assertEquals(Sha1Hashers.digest("Jello"), cache.getDigest(file));
+        assertEquals(1, cache.getMisses());
+
+        // Recently modified files are hashed each time
+        File fresh = newFile("b.txt", "Fresh", System.currentTimeMillis());
+        assertEquals(Sha1Hashers.digest("Fresh"), cache.getDigest(fresh));
+        assertEquals(Sha1Hashers.digest("Fresh"), cache.getDigest(fresh));
+        assertEquals(3, cache.getMisses());
+        assertEquals(1, cache.getSize());
+
+        // Obsolete records are removed by the compaction
+        for (int i = 0; i < 3000; i++) {
+            file.setLastModified(old + 2000 + i * 1000);
+            cache.getDigest(file);
+        }
+        assertTrue(index.length() < 8 + 2100 * recordSize);
+        cache.compact();
+        assertEquals(8 + recordSize, index.length());
+        cache.close();
+
+        // A truncated record is dropped
+        raf = new RandomAccessFile(index, "rw");
+        raf.setLength(raf.length() + 10);
+        raf.close();
+        cache = new FileDigestCache(index);
+        assertEquals(Sha1Hashers.digest("Jello"), cache.getDigest(file));
+        assertEquals(0, cache.getMisses());
+        assertEquals(1, cache.getSize());
+        cache.close();
+    }
+
+    public void testDamagedLog() throws Exception {
+        File index = new File(fDir, "index");
+        long old = System.currentTimeMillis() - 10000000;
+        File file = newFile("a.txt", "Hello", old);
+        FileDigestCache cache = new FileDigestCache(index);
+        cache.getDigest(file);
+        cache.close();
+        long length = index.length();
+
+        // A huge record length
+        RandomAccessFile raf = new RandomAccessFile(index, "rw");
+        raf.seek(length);
+        raf.writeInt(Integer.MAX_VALUE);
+        raf.write(new byte[100]);
+        raf.close();
+        cache = new FileDigestCache(index);
+        assertEquals(length, index.length());
+        assertEquals(1, cache.getSize());
+        assertEquals(Sha1Hashers.digest("Hello"), cache.getDigest(file));
+        assertEquals(0, cache.getMisses());
+        cache.close();
+
+        // A record with a bad string
+        raf = new RandomAccessFile(index, "rw");
+        raf.seek(length);
+        raf.writeInt(60);
+        raf.writeShort(50);
+        raf.write(0xFF);
+        raf.write(new byte[57]);
+        raf.close();
+        cache = new FileDigestCache(index);
+        assertEquals(length, index.length());
+        assertEquals(1, cache.getSize());
+        cache.close();
+    }
+
+    public void testLock() throws Exception {
+        File index = new File(fDir, "index");
+        FileDigestCache cache = new FileDigestCache(index);
+        try {
+            new FileDigestCache(index);
+            fail();
+        } catch (IOException e) {
+        }
+        cache.close();
+        cache = new FileDigestCache(index);
+        cache.close();
+    }
+
+}
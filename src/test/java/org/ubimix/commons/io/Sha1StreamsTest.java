@@ -0,0 +1,153 @@
+/**
+ * 
+ */
+package org.ubimix.commons.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.ubimix.commons.digests.Sha1Digest;
+import org.ubimix.commons.digests.Sha1Hashers;
+
+/**
+ * @author kotelnikov
+ */
+public class Sha1StreamsTest extends TestCase {
+
+    /**
+     * @param name
+     */
+    public Sha1StreamsTest(String name) {
+        super(name);
+    }
+
+    private byte[] newContent(int size) {
+        byte[] buf = new byte[size];
+        new Random(size).nextBytes(buf);
+        return buf;
+    }
+
+    public void testCopy() throws Exception {
+        byte[] buf = newContent(100 * 1024 + 3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(Sha1Hashers.digest(buf), IOUtil.copyWithDigest(
+            new ByteArrayInputStream(buf),
+            out));
+        assertTrue(Arrays.equals(buf, out.toByteArray()));
+    }
+
+    public void testInputStream() throws Exception {
+        byte[] buf = newContent(50000);
+        Sha1InputStream input = new Sha1InputStream(new ByteArrayInputStream(
+            buf));
+        assertEquals(buf[0] & 0xFF, input.read());
+        assertEquals(10, input.read(new byte[10]));
+        assertEquals(20000, input.skip(20000));
+        assertEquals(Sha1Hashers.digest(buf, 0, 20011), input.getDigest());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IOUtil.copy(input, out);
+        assertEquals(Sha1Hashers.digest(buf), input.getDigest());
+
+        // Sources returning no bytes do not block skipping
+        input = new Sha1InputStream(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                return -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                return 0;
+            }
+        });
+        assertEquals(0, input.skip(100));
+    }
+
+    public void testOutputStream() throws Exception {
+        byte[] buf = newContent(50000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Sha1OutputStream output = new Sha1OutputStream(out);
+        output.write(buf[0]);
+        output.write(buf, 1, buf.length - 1);
+        output.close();
+        assertEquals(Sha1Hashers.digest(buf), output.getDigest());
+        assertTrue(Arrays.equals(buf, out.toByteArray()));
+    }
+
+    public void testReader() throws Exception {
+        StringBuilder buf = new StringBuilder();
+        Random random = new Random(1);
+        while (buf.length() < 50000) {
+            switch (random.nextInt(3)) {
+                case 0:
+                    buf.append("text ");
+                    break;
+                case 1:
+                    buf.append("\u0442\u0435\u043a\u0441\u0442 ");
+                    break;
+                default:
+                    buf.appendCodePoint(0x1F600 + random.nextInt(50));
+            }
+        }
+        // Put a surrogate pair on the boundary of the first window
+        buf.insert(1024 * 10 - 1, "\uD83D\uDE00");
+        String str = buf.toString();
+        Sha1Digest control = Sha1Hashers.digest(str);
+        assertEquals(control, IOUtil.digest(new StringReader(str)));
+
+        // Readers returning small portions of characters
+        for (final int max : new int[] { 1, 2, 3, 7 }) {
+            StringReader reader = new StringReader(str) {
+                @Override
+                public int read(char[] cbuf, int off, int len)
+                    throws IOException {
+                    return super.read(cbuf, off, Math.min(len, max));
+                }
+            };
+            Sha1Reader in = new Sha1Reader(reader);
+            char[] array = new char[5];
+            while (in.read(array, 0, array.length) >= 0) {
+            }
+            assertEquals(control, in.getDigest());
+        }
+        Sha1Reader in = new Sha1Reader(new StringReader(str));
+        assertEquals(1000, in.skip(1000));
+        while (in.read() >= 0) {
+        }
+        assertEquals(control, in.getDigest());
+
+        // Unpaired surrogates are replaced by '?'
+        String bad = "a\uD83D";
+        assertEquals(
+            Sha1Hashers.digest("a?"),
+            IOUtil.digest(new StringReader(bad)));
+        in = new Sha1Reader(new StringReader(bad + "b"));
+        assertEquals('a', in.read());
+        assertEquals(0xD83D, in.read());
+        assertEquals(Sha1Hashers.digest("a?"), in.getDigest());
+        assertEquals('b', in.read());
+        assertEquals(Sha1Hashers.digest("a?b"), in.getDigest());
+
+        // Sources returning no characters do not block skipping
+        in = new Sha1Reader(new Reader() {
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public int read(char[] cbuf, int off, int len) {
+                return 0;
+            }
+        });
+        assertEquals(0, in.skip(100));
+    }
+
+}